@@ -0,0 +1,68 @@
+package gitlet;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static gitlet.Utils.*;
+
+/** Throughput of Repository.addToIndex, staging a modified file into an index
+ *  that already holds a given number of entries. Every add ends with the
+ *  Durable barrier, as the command does, so the flush and rename of the new
+ *  blob are measured and staged objects do not pile up between adds.
+ *  @author Vivek Singh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AddBenchmark {
+    /** Entries staged before the benchmark starts **/
+    @Param({"0", "1000", "10000"})
+    public int staged;
+
+    private File dir;
+    private File file;
+    /** Number of adds so far, makes every add see new contents **/
+    private long version;
+
+    @Setup
+    public void setup() {
+        dir = BenchRepo.init();
+        file = join(dir, "hot.txt");
+        writeContents(file, "initial");
+        Repository.lockIndex();
+        Repository.setupStagingArea("hot.txt");
+        gitlet.Tree index = Repository.readIndex();
+        String blob = BenchRepo.blob("staged");
+        for (int i = 0; i < staged; i++) {
+            index.getMap().put("staged-" + i + ".txt", blob);
+        }
+        Repository.writeIndex(index);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchRepo.close(dir);
+    }
+
+    @Benchmark
+    public void addModifiedFile() {
+        writeContents(file, "version " + version++);
+        Repository.addToIndex("hot.txt");
+        gitlet.Durable.barrier();
+    }
+}
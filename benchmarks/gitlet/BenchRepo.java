@@ -0,0 +1,83 @@
+package gitlet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static gitlet.Utils.*;
+
+/** Throwaway repositories for the benchmarks.
+ *  Repository fixes its working directory when the class is first used, so a
+ *  benchmark creates its repository in its setup, before anything touches
+ *  Repository, and JMH runs every trial in a fresh JVM. Objects are written
+ *  directly rather than through the commands, so large fixtures build quickly.
+ *  @author Vivek Singh
+ */
+final class BenchRepo {
+    private BenchRepo() {
+    }
+
+    /** Create an empty directory, make it the working directory and initialise a
+     * repository in it.
+     * @return the working directory. **/
+    static File init() {
+        try {
+            return init(Files.createTempDirectory("gitlet-bench").toFile());
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Make dir the working directory and initialise a repository in it.
+     * @return dir. **/
+    static File init(File dir) {
+        dir.mkdirs();
+        System.setProperty("user.dir", dir.getAbsolutePath());
+        Repository.setupGitlet();
+        return dir;
+    }
+
+    /** Store contents as a blob and return its id. **/
+    static String blob(String contents) {
+        String id = sha1(contents);
+        gitlet.Durable.stage(join(Repository.BLOB_DIR, id), contents);
+        return id;
+    }
+
+    /** Store a commit of the given files, a map from file name to blob id, and
+     * return its id. parent2 is null except for merges. **/
+    static String commit(String msg, String parent, String parent2, Map<String, String> files) {
+        gitlet.Tree t = gitlet.Tree.createTree();
+        t.getMap().putAll(files);
+        byte[] tree = serialize(t);
+        String treeID = sha1(tree);
+        gitlet.Durable.stage(join(Repository.TREE_DIR, treeID), tree);
+        byte[] commit = serialize(new gitlet.Commit(msg, parent, new Date(), treeID, parent2));
+        String commitID = sha1(commit);
+        gitlet.Durable.stage(join(Repository.COMMIT_DIR, commitID), commit);
+        return commitID;
+    }
+
+    /** Point the named branch at the commit id, putting all staged objects in place first. **/
+    static void branch(String name, String commitID) {
+        Repository.REFS.writeLoose(name, commitID);
+    }
+
+    /** Install the index if a benchmark staged changes into it, then delete the
+     * repository in dir and its working files. **/
+    static void close(File dir) {
+        gitlet.LockFile index = gitlet.LockFile.heldOn(Repository.INDEX);
+        if (index != null) {
+            index.commit();
+        }
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+}
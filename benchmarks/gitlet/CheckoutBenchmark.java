@@ -0,0 +1,68 @@
+package gitlet;
+import java.io.File;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static gitlet.Utils.*;
+
+/** Repository.checkoutBranch between two branches that track the same files
+ *  with different contents, so every checkout rewrites the whole working tree.
+ *  Each invocation is a single checkout, timed on its own.
+ *  @author Vivek Singh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CheckoutBenchmark {
+    /** Number of files in each branch **/
+    @Param({"1000", "10000", "100000"})
+    public int files;
+
+    private File dir;
+    /** Branch to check out next **/
+    private String next = "other";
+
+    @Setup
+    public void setup() {
+        dir = BenchRepo.init();
+        Map<String, String> master = new TreeMap<>();
+        Map<String, String> other = new TreeMap<>();
+        for (int i = 0; i < files; i++) {
+            String name = "file-" + i + ".txt";
+            master.put(name, BenchRepo.blob("master " + i));
+            other.put(name, BenchRepo.blob("other " + i));
+            writeContents(join(dir, name), "master " + i);
+        }
+        String root = Repository.getLatestIDInHEAD();
+        BenchRepo.branch("other", BenchRepo.commit("other", root, null, other));
+        BenchRepo.branch("master", BenchRepo.commit("master", root, null, master));
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchRepo.close(dir);
+    }
+
+    @Benchmark
+    public void checkoutBranch() {
+        Repository.checkoutBranch(next);
+        next = next.equals("other") ? "master" : "other";
+    }
+}
@@ -0,0 +1,57 @@
+package gitlet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Throughput of Utils.sha1, which names every blob, tree and commit.
+ *  @author Vivek Singh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashBenchmark {
+    /** Size in bytes of the hashed contents **/
+    @Param({"64", "4096", "1048576"})
+    public int size;
+
+    /** Contents as bytes, as for serialized trees and commits **/
+    private byte[] bytes;
+    /** Contents as a string, as for blobs **/
+    private String text;
+
+    @Setup
+    public void setup() {
+        Random r = new Random(42);
+        bytes = new byte[size];
+        r.nextBytes(bytes);
+        StringBuilder sb = new StringBuilder(size);
+        for (int i = 0; i < size; i++) {
+            sb.append((char) ('a' + r.nextInt(26)));
+        }
+        text = sb.toString();
+    }
+
+    @Benchmark
+    public String sha1Bytes() {
+        return Utils.sha1(bytes);
+    }
+
+    @Benchmark
+    public String sha1String() {
+        return Utils.sha1(text);
+    }
+}
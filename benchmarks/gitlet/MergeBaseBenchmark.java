@@ -0,0 +1,76 @@
+package gitlet;
+import java.io.File;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Repository.findSplitPoint on synthetic histories of two long-lived branches,
+ *  master and side, where a fraction of the commits on master merge side in.
+ *  findSplitPoint enumerates every path to the initial commit, and each merge
+ *  doubles the number of paths, so the merge densities are kept small.
+ *  @author Vivek Singh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MergeBaseBenchmark {
+    /** Number of commits in the history **/
+    @Param({"32", "128"})
+    public int commits;
+    /** Fraction of the commits on master that merge side **/
+    @Param({"0.0", "0.05", "0.1"})
+    public double mergeDensity;
+
+    private File dir;
+
+    @Setup
+    public void setup() {
+        dir = BenchRepo.init();
+        String root = Repository.getLatestIDInHEAD();
+        String master = root;
+        String side = root;
+        Map<String, String> files = new TreeMap<>();
+        Random r = new Random(42);
+        for (int i = 0; i < commits; i++) {
+            files.put("f" + (i % 8) + ".txt", BenchRepo.blob("version " + i));
+            if (i % 3 == 2) {
+                side = BenchRepo.commit("side " + i, side, null, files);
+            } else if (r.nextDouble() < mergeDensity) {
+                master = BenchRepo.commit("merge " + i, master, side, files);
+            } else {
+                master = BenchRepo.commit("master " + i, master, null, files);
+            }
+        }
+        /* A final side commit keeps side from being an ancestor of master. */
+        side = BenchRepo.commit("side tip", side, null, files);
+        BenchRepo.branch("side", side);
+        BenchRepo.branch("master", master);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchRepo.close(dir);
+    }
+
+    @Benchmark
+    public String findSplitPoint() {
+        return Repository.findSplitPoint("side");
+    }
+}
@@ -0,0 +1,168 @@
+package gitlet;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static gitlet.Utils.*;
+
+/** Builds a synthetic repository of a given shape for the latency suite.
+ *  Usage: java gitlet.RepoGenerator DIR [--commits N] [--branches B]
+ *             [--merge-every M] [--files F] [--file-size S] [--seed X]
+ *  The first commit on master adds F files of S bytes each. Every later commit
+ *  goes to one of the B branches in turn and changes a few files, and every
+ *  M-th commit instead merges one of the other branches into master. Each
+ *  branch only changes its own share of the files, so every merge is clean.
+ *  The working directory ends up with master checked out.
+ *  @author Vivek Singh
+ */
+public class RepoGenerator {
+    /** Most files a single commit changes **/
+    private static final int MAX_CHANGES = 3;
+
+    private int commits = 1000;
+    private int branches = 4;
+    private int mergeEvery = 10;
+    private int files = 1000;
+    private int fileSize = 1024;
+    private long seed = 42;
+
+    public static void main(String[] args) {
+        if (args.length == 0 || args.length % 2 == 0) {
+            System.out.println("Usage: java gitlet.RepoGenerator DIR [--commits N] [--branches B]"
+                    + " [--merge-every M] [--files F] [--file-size S] [--seed X]");
+            System.exit(1);
+        }
+        RepoGenerator g = new RepoGenerator();
+        for (int i = 1; i < args.length; i += 2) {
+            long value = Long.parseLong(args[i + 1]);
+            switch (args[i]) {
+                case "--commits":
+                    g.commits = (int) value;
+                    break;
+                case "--branches":
+                    g.branches = Math.max(1, (int) value);
+                    break;
+                case "--merge-every":
+                    g.mergeEvery = (int) value;
+                    break;
+                case "--files":
+                    g.files = Math.max(1, (int) value);
+                    break;
+                case "--file-size":
+                    g.fileSize = (int) value;
+                    break;
+                case "--seed":
+                    g.seed = value;
+                    break;
+                default:
+                    System.out.println("Unknown option " + args[i] + ".");
+                    System.exit(1);
+            }
+        }
+        File dir = new File(args[0]).getAbsoluteFile();
+        if (join(dir, ".gitlet").exists()) {
+            System.out.println("A Gitlet version-control system already exists in " + dir + ".");
+            System.exit(1);
+        }
+        long start = System.nanoTime();
+        g.generate(dir);
+        System.out.printf("Generated %d commits on %d branches with %d files in %.1f s.%n",
+                g.commits, g.branches, g.files, (System.nanoTime() - start) / 1e9);
+    }
+
+    /** Build the repository in dir. **/
+    private void generate(File dir) {
+        Random r = new Random(seed);
+        BenchRepo.init(dir);
+        String root = Repository.getLatestIDInHEAD();
+
+        TreeMap<String, String> initial = new TreeMap<>();
+        for (int i = 0; i < files; i++) {
+            initial.put(fileName(i), BenchRepo.blob(contents(r, i, 0)));
+        }
+        String first = commit("initial files", root, null, initial, initial.keySet());
+
+        List<String> names = new ArrayList<>();
+        List<String> tips = new ArrayList<>();
+        List<TreeMap<String, String>> trees = new ArrayList<>();
+        List<Set<String>> unmerged = new ArrayList<>();
+        for (int b = 0; b < branches; b++) {
+            names.add(b == 0 ? "master" : "branch-" + b);
+            tips.add(first);
+            trees.add(new TreeMap<>(initial));
+            unmerged.add(new HashSet<>());
+        }
+
+        for (int i = 2; i < commits; i++) {
+            if (branches > 1 && mergeEvery > 0 && i % mergeEvery == 0) {
+                int b = 1 + (i / mergeEvery) % (branches - 1);
+                TreeMap<String, String> merged = trees.get(0);
+                for (String file : unmerged.get(b)) {
+                    merged.put(file, trees.get(b).get(file));
+                }
+                tips.set(0, commit("Merged " + names.get(b) + " into master.", tips.get(0),
+                        tips.get(b), merged, unmerged.get(b)));
+                unmerged.get(b).clear();
+                continue;
+            }
+            int b = i % branches;
+            TreeMap<String, String> tree = trees.get(b);
+            Set<String> changed = new HashSet<>();
+            int n = 1 + r.nextInt(MAX_CHANGES);
+            for (int k = 0; k < n; k++) {
+                /* Branch b only touches the files whose number is b modulo branches. */
+                int slots = (files - b + branches - 1) / branches;
+                if (slots == 0) {
+                    break;
+                }
+                int file = b + branches * r.nextInt(slots);
+                tree.put(fileName(file), BenchRepo.blob(contents(r, file, i)));
+                changed.add(fileName(file));
+            }
+            unmerged.get(b).addAll(changed);
+            tips.set(b, commit("commit " + i + " on " + names.get(b), tips.get(b), null, tree, changed));
+        }
+
+        for (int b = 0; b < branches; b++) {
+            BenchRepo.branch(names.get(b), tips.get(b));
+        }
+        for (String file : trees.get(0).keySet()) {
+            writeContents(join(dir, file), readContents(join(Repository.BLOB_DIR, trees.get(0).get(file))));
+        }
+        /* Without an index every checked-out file would count as untracked. */
+        Repository.writeIndex(gitlet.Tree.createTree());
+        /* Build the message index in one pass; the commits above are not indexed. */
+        gitlet.MessageIndex.load();
+    }
+
+    /** Store a commit and its changed-path filter and return its id. **/
+    private String commit(String msg, String parent, String parent2, TreeMap<String, String> tree,
+                          Set<String> changed) {
+        String id = BenchRepo.commit(msg, parent, parent2, tree);
+        gitlet.BloomFilter.saveFor(id, changed);
+        return id;
+    }
+
+    /** Return the name of the file with the given number. **/
+    private static String fileName(int i) {
+        return String.format("file-%06d.txt", i);
+    }
+
+    /** Return fileSize bytes of text for version v of file i. **/
+    private String contents(Random r, int i, int v) {
+        StringBuilder sb = new StringBuilder(fileSize);
+        sb.append("file ").append(i).append(" version ").append(v).append('\n');
+        while (sb.length() < fileSize) {
+            sb.append((char) ('a' + r.nextInt(26)));
+            if (sb.length() % 64 == 63) {
+                sb.append('\n');
+            }
+        }
+        sb.setLength(Math.max(fileSize, sb.indexOf("\n") + 1));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,85 @@
+package gitlet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static gitlet.Utils.*;
+
+/** Cost of Utils.serialize and Utils.readObject for commits and for trees of
+ *  growing size, the two objects every command reads.
+ *  @author Vivek Singh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+    /** Number of files in the tree **/
+    @Param({"10", "1000", "100000"})
+    public int files;
+
+    private gitlet.Commit commit;
+    private gitlet.Tree tree;
+    private File dir;
+    private File commitFile;
+    private File treeFile;
+
+    @Setup
+    public void setup() throws IOException {
+        commit = new gitlet.Commit("a commit message of ordinary length", sha1("parent"),
+                new Date(), sha1("tree"), null);
+        tree = gitlet.Tree.createTree();
+        for (int i = 0; i < files; i++) {
+            tree.getMap().put("file-" + i + ".txt", sha1("contents " + i));
+        }
+        dir = Files.createTempDirectory("gitlet-bench").toFile();
+        commitFile = join(dir, "commit");
+        treeFile = join(dir, "tree");
+        writeObject(commitFile, commit);
+        writeObject(treeFile, tree);
+    }
+
+    @TearDown
+    public void tearDown() {
+        commitFile.delete();
+        treeFile.delete();
+        dir.delete();
+    }
+
+    @Benchmark
+    public byte[] serializeCommit() {
+        return serialize(commit);
+    }
+
+    @Benchmark
+    public byte[] serializeTree() {
+        return serialize(tree);
+    }
+
+    @Benchmark
+    public gitlet.Commit readCommit() {
+        return readObject(commitFile, gitlet.Commit.class);
+    }
+
+    @Benchmark
+    public gitlet.Tree readTree() {
+        return readObject(treeFile, gitlet.Tree.class);
+    }
+}
@@ -0,0 +1,176 @@
+#!/usr/bin/env python3
+"""Times gitlet commands end to end against a generated repository.
+
+Usage:
+    python3 latency.py [--runs N] [--json FILE] [--keep DIR] [GENERATOR OPTIONS]
+
+The repository is built by gitlet.RepoGenerator (see RepoGenerator.java for
+its options, e.g. --commits 5000 --files 10000), so compile the benchmarks
+first with 'make'. Each command is then run N times as a separate java
+process, the way a user runs it, and the p50 and p99 of the wall-clock
+times are reported. The 'startup' row is gitlet with no command, the JVM
+start-up cost included in every other row.
+
+Commands that change the repository are prepared by untimed commands
+before each timed run: add stages a fresh edit, commit first stages one,
+checkout switches between master and a topic branch, reset moves master
+between its tip and its parent, and merge first resets master to a commit
+the topic branch cleanly merges into.
+"""
+
+import json
+import os
+import shutil
+import subprocess
+import sys
+import tempfile
+import time
+from os.path import abspath, dirname, join
+
+HERE = dirname(abspath(__file__))
+CLASSPATH = os.pathsep.join([join(HERE, "lib", "*"), join(HERE, "classes"), dirname(HERE)])
+
+COMMANDS = ["startup", "status", "log", "global-log", "add", "commit",
+            "checkout", "reset", "merge"]
+
+
+def usage():
+    print(__doc__.strip())
+    sys.exit(1)
+
+
+def gitlet(repo, *args, check=True):
+    """Run gitlet in REPO with ARGS and return its output."""
+    result = subprocess.run(["java", "-cp", CLASSPATH, "gitlet.Main"] + list(args),
+                            cwd=repo, stdout=subprocess.PIPE, stderr=subprocess.STDOUT,
+                            universal_newlines=True)
+    if check and result.returncode != 0:
+        raise RuntimeError("gitlet {} failed:\n{}".format(" ".join(args), result.stdout))
+    return result.stdout
+
+
+def timed(repo, *args, quiet=True):
+    """Run gitlet in REPO with ARGS and return the seconds it took. Gitlet
+    reports errors on standard output, so a command that succeeds silently
+    must print nothing."""
+    start = time.perf_counter()
+    out = gitlet(repo, *args)
+    seconds = time.perf_counter() - start
+    if quiet and out.strip():
+        raise RuntimeError("gitlet {} failed:\n{}".format(" ".join(args), out))
+    return seconds
+
+
+def head_id(repo):
+    """Return the id of the latest commit of the current branch."""
+    return gitlet(repo, "log").split("\n")[1].split()[1]
+
+
+def edit(repo, name, text):
+    with open(join(repo, name), "w") as f:
+        f.write(text)
+
+
+def percentile(samples, p):
+    """Return the nearest-rank P-th percentile of SAMPLES."""
+    ordered = sorted(samples)
+    rank = max(1, -(-len(ordered) * p // 100))
+    return ordered[int(rank) - 1]
+
+
+def prepare_topic(repo):
+    """Give master and a new topic branch one commit each on different files,
+    and return the id of master's commit."""
+    gitlet(repo, "branch", "topic")
+    gitlet(repo, "checkout", "topic")
+    edit(repo, "file-000000.txt", "changed on topic\n")
+    gitlet(repo, "add", "file-000000.txt")
+    gitlet(repo, "commit", "topic change")
+    gitlet(repo, "checkout", "master")
+    edit(repo, "file-000001.txt", "changed on master\n")
+    gitlet(repo, "add", "file-000001.txt")
+    gitlet(repo, "commit", "master change")
+    return head_id(repo)
+
+
+def measure(repo, runs):
+    """Return a map from command name to its list of run times."""
+    tip = prepare_topic(repo)
+    parent = None
+    samples = {name: [] for name in COMMANDS}
+    for i in range(runs):
+        start = time.perf_counter()
+        gitlet(repo, check=False)
+        samples["startup"].append(time.perf_counter() - start)
+        for name in ("status", "log", "global-log"):
+            samples[name].append(timed(repo, name, quiet=False))
+
+        edit(repo, "file-000002.txt", "add run {}\n".format(i))
+        samples["add"].append(timed(repo, "add", "file-000002.txt"))
+        gitlet(repo, "commit", "staged by add run {}".format(i))
+
+        edit(repo, "file-000002.txt", "commit run {}\n".format(i))
+        gitlet(repo, "add", "file-000002.txt")
+        samples["commit"].append(timed(repo, "commit", "commit run {}".format(i)))
+
+        samples["checkout"].append(timed(repo, "checkout", "topic"))
+        samples["checkout"].append(timed(repo, "checkout", "master"))
+
+        gitlet(repo, "reset", tip)
+        if parent is None:
+            parent = gitlet(repo, "log").split("===")[2].split("\n")[1].split()[1]
+        samples["reset"].append(timed(repo, "reset", parent))
+        samples["reset"].append(timed(repo, "reset", tip))
+
+        samples["merge"].append(timed(repo, "merge", "topic"))
+        gitlet(repo, "reset", tip)
+    return samples
+
+
+def main(argv):
+    runs = 20
+    json_file = None
+    keep = None
+    generator_args = []
+    i = 0
+    while i < len(argv):
+        if argv[i] in ("-h", "--help") or i + 1 == len(argv):
+            usage()
+        if argv[i] == "--runs":
+            runs = int(argv[i + 1])
+        elif argv[i] == "--json":
+            json_file = argv[i + 1]
+        elif argv[i] == "--keep":
+            keep = argv[i + 1]
+        else:
+            generator_args += argv[i:i + 2]
+        i += 2
+
+    repo = keep or join(tempfile.mkdtemp(prefix="gitlet-latency"), "repo")
+    try:
+        generated = subprocess.run(["java", "-cp", CLASSPATH, "gitlet.RepoGenerator", repo]
+                                   + generator_args, stdout=subprocess.PIPE,
+                                   universal_newlines=True)
+        print(generated.stdout.strip())
+        if generated.returncode != 0:
+            sys.exit(1)
+        samples = measure(repo, runs)
+    finally:
+        if keep is None:
+            shutil.rmtree(dirname(repo), ignore_errors=True)
+
+    results = []
+    print("{:<12} {:>6} {:>10} {:>10}".format("command", "runs", "p50 ms", "p99 ms"))
+    for name in COMMANDS:
+        p50 = percentile(samples[name], 50) * 1000
+        p99 = percentile(samples[name], 99) * 1000
+        print("{:<12} {:>6} {:>10.1f} {:>10.1f}".format(name, len(samples[name]), p50, p99))
+        results.append({"command": name, "runs": len(samples[name]),
+                        "p50_ms": round(p50, 2), "p99_ms": round(p99, 2)})
+    if json_file:
+        with open(json_file, "w") as f:
+            json.dump({"generator": generator_args, "results": results}, f, indent=2)
+
+
+if __name__ == "__main__":
+    main(sys.argv[1:])
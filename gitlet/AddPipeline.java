@@ -0,0 +1,253 @@
+package gitlet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** Adds many files at once.
+ *  Files go through three stages connected by bounded queues: reader threads
+ *  read them, hashing threads compute their blob ids and compare them with
+ *  the index and the current commit, and writer threads stage the new blobs
+ *  through gitlet.Durable. A full queue blocks the stage before it, and the
+ *  contents in flight are bounded as well, so a large import keeps the disk
+ *  and every core busy without holding all its files in memory. The index is
+ *  updated once, on the calling thread, after the last file.
+ *  Each stage records its work as spans add.read, add.hash and add.write, so
+ *  with GITLET_TRACE set the summary gives the time and bytes of each stage.
+ *  @author Vivek Singh
+ */
+public class AddPipeline {
+    /** Threads reading files **/
+    private static final int READERS = 4;
+    /** Threads hashing contents **/
+    private static final int HASHERS = Math.max(1, Runtime.getRuntime().availableProcessors());
+    /** Threads writing blobs **/
+    private static final int WRITERS = 4;
+    /** Capacity of each queue between stages **/
+    private static final int QUEUE_CAPACITY = 64;
+    /** Bytes of file contents read but not yet written **/
+    private static final int MAX_BYTES_IN_FLIGHT = 64 << 20;
+
+    /** Marks the end of a queue **/
+    private static final Item END = new Item(null, 0);
+
+    /** A file on its way through the stages. **/
+    private static final class Item {
+        final String name;
+        /** Bytes taken from the in-flight budget for this file **/
+        final int permits;
+        byte[] contents;
+        String id;
+
+        Item(String name, int permits) {
+            this.name = name;
+            this.permits = permits;
+        }
+    }
+
+    /** Files waiting to be read **/
+    private final ConcurrentLinkedQueue<String> names;
+    private final BlockingQueue<Item> toHash = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final BlockingQueue<Item> toWrite = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Semaphore inFlight = new Semaphore(MAX_BYTES_IN_FLIGHT);
+    /** Readers and hashers still running; the last of each ends the next queue **/
+    private final AtomicInteger readers = new AtomicInteger(READERS);
+    private final AtomicInteger hashers = new AtomicInteger(HASHERS);
+    /** First failure of any stage **/
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+    /** The index and the tree of the current commit, only read while the stages run **/
+    private final gitlet.Tree index;
+    private final gitlet.Tree head;
+    /** Blob ids to stage, by file **/
+    private final Map<String, String> staged = new ConcurrentHashMap<>();
+
+    private AddPipeline(List<String> files, gitlet.Tree index, gitlet.Tree head) {
+        this.names = new ConcurrentLinkedQueue<>(files);
+        this.index = index;
+        this.head = head;
+    }
+
+    /** Add every file in files, all in the working directory, to the staging area.
+     * A file staged for removal is only unstaged, and a file that matches the
+     * current commit and is not staged is left alone, as in add of one file. **/
+    public static void addAll(List<String> files) {
+        gitlet.Tree index = indexExists() ? readIndex() : gitlet.Tree.createTree();
+        gitlet.Tree head = gitlet.Commit.getLatestCommitTreeObj(getLatestIDInHEAD());
+
+        List<String> toRead = new ArrayList<>();
+        boolean changed = false;
+        for (String file : files) {
+            if (index.isRemoved(file)) {
+                index.getRemoveSet().remove(file);
+                changed = true;
+            } else {
+                toRead.add(file);
+            }
+        }
+
+        Map<String, String> staged = stageChanged(toRead, index, head);
+        if (!staged.isEmpty()) {
+            index.getMap().putAll(staged);
+            changed = true;
+        }
+        if (changed || !indexExists()) {
+            writeIndex(index);
+        }
+    }
+
+    /** Stage the blobs of the files in files, all in the working directory, that
+     * differ from their version in index, or from head for files index does not
+     * have, and return their ids by file. head may be null, then every file not
+     * in index counts as changed. Blobs already stored are not written again. **/
+    static Map<String, String> stageChanged(List<String> files, gitlet.Tree index, gitlet.Tree head) {
+        AddPipeline p = new AddPipeline(files, index, head);
+        p.run();
+        return p.staged;
+    }
+
+    /** Run all stages to completion. **/
+    private void run() {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < READERS; i++) {
+            threads.add(new Thread(this::read, "gitlet-add-read-" + i));
+        }
+        for (int i = 0; i < HASHERS; i++) {
+            threads.add(new Thread(this::hash, "gitlet-add-hash-" + i));
+        }
+        for (int i = 0; i < WRITERS; i++) {
+            threads.add(new Thread(this::write, "gitlet-add-write-" + i));
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        try {
+            for (Thread t : threads) {
+                t.join();
+            }
+        } catch (InterruptedException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    /** Reader stage: read files until none are left. **/
+    private void read() {
+        try {
+            for (String name = names.poll(); name != null; name = names.poll()) {
+                if (failure.get() != null) {
+                    break;
+                }
+                File f = join(CWD, name);
+                int permits = (int) Math.min(f.length(), MAX_BYTES_IN_FLIGHT);
+                inFlight.acquire(permits);
+                Item item = new Item(name, permits);
+                try (gitlet.Trace.Span span = gitlet.Trace.span("add.read")) {
+                    item.contents = Files.readAllBytes(f.toPath());
+                    span.bytes(item.contents.length);
+                } catch (IOException e) {
+                    inFlight.release(permits);
+                    fail(new IllegalArgumentException(e.getMessage()));
+                    break;
+                }
+                toHash.put(item);
+            }
+        } catch (InterruptedException e) {
+            fail(new IllegalArgumentException(e.getMessage()));
+        } finally {
+            if (readers.decrementAndGet() == 0) {
+                endQueue(toHash, HASHERS);
+            }
+        }
+    }
+
+    /** Hashing stage: compute blob ids and pass on the blobs that must be staged. **/
+    private void hash() {
+        try {
+            for (Item item = toHash.take(); item != END; item = toHash.take()) {
+                if (failure.get() == null && changed(item)) {
+                    toWrite.put(item);
+                } else {
+                    inFlight.release(item.permits);
+                }
+            }
+        } catch (InterruptedException e) {
+            fail(new IllegalArgumentException(e.getMessage()));
+        } finally {
+            if (hashers.decrementAndGet() == 0) {
+                endQueue(toWrite, WRITERS);
+            }
+        }
+    }
+
+    /** Compute the blob id of item and return whether it must be staged: it differs
+     * from the staged version, or from the committed one if the file is not staged. **/
+    private boolean changed(Item item) {
+        try (gitlet.Trace.Span span = gitlet.Trace.span("add.hash")) {
+            /* Blobs hold the contents as decoded and encoded again, as in add of one file. */
+            item.contents = new String(item.contents, StandardCharsets.UTF_8)
+                    .getBytes(StandardCharsets.UTF_8);
+            item.id = sha1(item.contents);
+            span.bytes(item.contents.length);
+        } catch (RuntimeException e) {
+            fail(e);
+            return false;
+        }
+        String indexed = index.get(item.name);
+        if (indexed != null) {
+            return !item.id.equals(indexed);
+        }
+        return head == null || !item.id.equals(head.get(item.name));
+    }
+
+    /** Writer stage: stage the blobs. **/
+    private void write() {
+        try {
+            for (Item item = toWrite.take(); item != END; item = toWrite.take()) {
+                if (failure.get() == null) {
+                    try (gitlet.Trace.Span span = gitlet.Trace.span("add.write")) {
+                        gitlet.Durable.stage(join(BLOB_DIR, item.id), item.contents);
+                        span.bytes(item.contents.length);
+                        staged.put(item.name, item.id);
+                    } catch (RuntimeException e) {
+                        fail(e);
+                    }
+                }
+                inFlight.release(item.permits);
+            }
+        } catch (InterruptedException e) {
+            fail(new IllegalArgumentException(e.getMessage()));
+        }
+    }
+
+    /** Record the first failure; the stages then drain their queues without working. **/
+    private void fail(RuntimeException e) {
+        failure.compareAndSet(null, e);
+    }
+
+    /** Put one end marker for each of the n threads taking from queue. **/
+    private void endQueue(BlockingQueue<Item> queue, int n) {
+        try {
+            for (int i = 0; i < n; i++) {
+                queue.put(END);
+            }
+        } catch (InterruptedException e) {
+            fail(new IllegalArgumentException(e.getMessage()));
+        }
+    }
+}
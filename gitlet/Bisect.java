@@ -0,0 +1,325 @@
+package gitlet;
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static gitlet.Commit.getCommitObj;
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** Binary search for the commit that introduced a bug.
+ *  The state is kept in .gitlet/bisect: the branch bisect started on, the bad
+ *  commit, the good commits and the commit in the working directory. The
+ *  ancestry of the bad commit is read once into .gitlet/bisect-graph, every
+ *  commit as an index with the indices of its parents, parents first. Each
+ *  step then finds the candidates, the ancestors of the bad commit that are
+ *  not ancestors of a good one, and counts the candidates every candidate
+ *  reaches on that graph, without reading any commit: a commit with one
+ *  candidate parent reaches one more than its parent, only merges are walked.
+ *  The candidate that reaches closest to half of them is tested next, and the
+ *  working directory is moved to it by writing only the files that differ.
+ *  HEAD stays on the branch, which bisect reset brings the working directory
+ *  back to.
+ *  @author Vivek Singh
+ */
+public class Bisect {
+    /** State of the bisection in progress **/
+    static final File STATE = join(GITLET_DIR, "bisect");
+    /** Ancestry of the bad commit **/
+    static final File GRAPH = join(GITLET_DIR, "bisect-graph");
+
+    /** Commits and their parents, parents before children. **/
+    static class Graph implements Serializable {
+        private static final long serialVersionUID = 1L;
+        /** Ids of the commits, 20 bytes each **/
+        final byte[] ids;
+        /** Index of the first and second parent of every commit, -1 if none **/
+        final int[] parents;
+
+        Graph(byte[] ids, int[] parents) {
+            this.ids = ids;
+            this.parents = parents;
+        }
+
+        int size() {
+            return parents.length / 2;
+        }
+
+        String id(int i) {
+            return gitlet.ObjectId.toHex(ids, i * gitlet.ObjectId.LENGTH);
+        }
+
+        /** Return the index of every commit by id. **/
+        Map<gitlet.ObjectId, Integer> positions() {
+            Map<gitlet.ObjectId, Integer> pos = new HashMap<>();
+            byte[] b = new byte[gitlet.ObjectId.LENGTH];
+            for (int i = 0; i < size(); i++) {
+                System.arraycopy(ids, i * gitlet.ObjectId.LENGTH, b, 0, b.length);
+                pos.put(gitlet.ObjectId.fromBytes(b), i);
+            }
+            return pos;
+        }
+    }
+
+    /** Start a bisection at the current commit. **/
+    public static void start() {
+        if (STATE.exists()) {
+            throw error("Already bisecting; run bisect reset first.");
+        }
+        if (newFilesTracked()) {
+            throw error("You have uncommitted changes.");
+        }
+        if (anyUntrackedFiles()) {
+            throw error("There is an untracked file in the way; delete it, or add and commit it first.");
+        }
+        writeContents(STATE, "branch " + getActiveBranch() + "\ncurrent " + getLatestIDInHEAD() + "\n");
+    }
+
+    /** Mark the commit, or the commit in the working directory if it is null,
+     * as good or bad, and move to the next commit to test. A mark that leaves a
+     * good commit that is not an ancestor of the bad one is refused, and not saved. **/
+    public static void mark(String kind, String commitID) {
+        Map<String, List<String>> state = readState();
+        List<String> marks = state.computeIfAbsent(kind, k -> new ArrayList<>());
+        if (kind.equals("bad")) {
+            marks.clear();
+        }
+        marks.add(commitID == null ? state.get("current").get(0) : commitID);
+        if (!state.containsKey("bad") || !state.containsKey("good")) {
+            writeState(state);
+            System.out.println("Waiting for both good and bad commits.");
+            return;
+        }
+        String bad = state.get("bad").get(0);
+        Graph g = graphOf(bad);
+        Map<gitlet.ObjectId, Integer> pos = g.positions();
+        boolean[] candidate = new boolean[g.size()];
+        reach(g, new int[] {pos.get(gitlet.ObjectId.fromHex(bad))}, candidate);
+        for (String good : state.get("good")) {
+            Integer p = pos.get(gitlet.ObjectId.fromHex(good));
+            if (p == null || !candidate[p]) {
+                throw error("%s is not an ancestor of the bad commit.", good);
+            }
+        }
+        writeState(state);
+        step(state, g, pos, candidate);
+    }
+
+    /** Stop bisecting and bring the working directory back to the branch. **/
+    public static void reset() {
+        Map<String, List<String>> state = readState();
+        String branch = state.get("branch").get(0);
+        updateWorkingFiles(gitlet.Commit.treeOf(state.get("current").get(0)),
+                gitlet.Commit.treeOf(latestCommitIn(branch)));
+        STATE.delete();
+        GRAPH.delete();
+    }
+
+    /** Test the candidate that splits the remaining ones most evenly, or print
+     * the first bad commit if it is the only one left. The candidates come in
+     * marking the ancestors of the bad commit, at their positions in g. **/
+    private static void step(Map<String, List<String>> state, Graph g,
+                             Map<gitlet.ObjectId, Integer> pos, boolean[] candidate) {
+        String bad = state.get("bad").get(0);
+        int n = g.size();
+
+        List<String> goods = state.get("good");
+        int[] goodPos = new int[goods.size()];
+        for (int i = 0; i < goods.size(); i++) {
+            goodPos[i] = pos.get(gitlet.ObjectId.fromHex(goods.get(i)));
+        }
+        boolean[] good = new boolean[n];
+        reach(g, goodPos, good);
+        for (int i = 0; i < n; i++) {
+            candidate[i] &= !good[i];
+        }
+
+        int total = 0;
+        for (boolean c : candidate) {
+            total += c ? 1 : 0;
+        }
+        if (total <= 1) {
+            gitlet.Commit c = getCommitObj(bad, COMMIT_DIR);
+            System.out.println(bad + " is the first bad commit");
+            System.out.println(c.getMsg());
+            return;
+        }
+
+        int[] count = counts(g, candidate);
+        int best = -1;
+        int bestScore = -1;
+        for (int i = 0; i < n; i++) {
+            int score = candidate[i] ? Math.min(count[i], total - count[i]) : -1;
+            if (score > bestScore) {
+                best = i;
+                bestScore = score;
+            }
+        }
+
+        String next = g.id(best);
+        updateWorkingFiles(gitlet.Commit.treeOf(state.get("current").get(0)),
+                gitlet.Commit.treeOf(next));
+        state.put("current", new ArrayList<>(List.of(next)));
+        writeState(state);
+        int left = total / 2;
+        System.out.println("Bisecting: " + left + " revisions left to test after this (roughly "
+                + (32 - Integer.numberOfLeadingZeros(left)) + " steps)");
+        System.out.println("[" + next + "] " + getCommitObj(next, COMMIT_DIR).getMsg());
+    }
+
+    /** Mark every commit reachable from the starts. **/
+    private static void reach(Graph g, int[] starts, boolean[] marked) {
+        Deque<Integer> stack = new ArrayDeque<>();
+        for (int s : starts) {
+            stack.push(s);
+        }
+        while (!stack.isEmpty()) {
+            int i = stack.pop();
+            if (marked[i]) {
+                continue;
+            }
+            marked[i] = true;
+            for (int k = 0; k < 2; k++) {
+                int p = g.parents[2 * i + k];
+                if (p >= 0 && !marked[p]) {
+                    stack.push(p);
+                }
+            }
+        }
+    }
+
+    /** Return for every candidate the number of candidates it reaches, itself included.
+     * The ancestors of a candidate that are not candidates are ancestors of a good
+     * commit, and so are all of theirs, so a candidate with one candidate parent
+     * reaches exactly one more than that parent; only merges are walked. **/
+    private static int[] counts(Graph g, boolean[] candidate) {
+        int n = g.size();
+        int[] count = new int[n];
+        boolean[] seen = new boolean[n];
+        List<Integer> visited = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (!candidate[i]) {
+                continue;
+            }
+            int p1 = g.parents[2 * i];
+            int p2 = g.parents[2 * i + 1];
+            boolean c1 = p1 >= 0 && candidate[p1];
+            boolean c2 = p2 >= 0 && candidate[p2];
+            if (c1 && c2) {
+                Deque<Integer> stack = new ArrayDeque<>();
+                stack.push(i);
+                while (!stack.isEmpty()) {
+                    int j = stack.pop();
+                    if (seen[j] || !candidate[j]) {
+                        continue;
+                    }
+                    seen[j] = true;
+                    visited.add(j);
+                    for (int k = 0; k < 2; k++) {
+                        if (g.parents[2 * j + k] >= 0) {
+                            stack.push(g.parents[2 * j + k]);
+                        }
+                    }
+                }
+                count[i] = visited.size();
+                for (int j : visited) {
+                    seen[j] = false;
+                }
+                visited.clear();
+            } else {
+                count[i] = 1 + (c1 ? count[p1] : c2 ? count[p2] : 0);
+            }
+        }
+        return count;
+    }
+
+    /** Return the ancestry graph of the bad commit, reading it once. **/
+    private static Graph graphOf(String bad) {
+        if (GRAPH.exists()) {
+            Graph g = readObject(GRAPH, Graph.class);
+            if (g.positions().containsKey(gitlet.ObjectId.fromHex(bad))) {
+                return g;
+            }
+        }
+        Graph g = gitlet.Trace.time("bisect.graph", () -> buildGraph(bad));
+        writeObject(GRAPH, g);
+        return g;
+    }
+
+    /** Read the commit and all its ancestors into a graph, parents first. **/
+    private static Graph buildGraph(String tip) {
+        Map<String, Integer> index = new HashMap<>();
+        Map<String, gitlet.Commit> pending = new HashMap<>();
+        List<String> order = new ArrayList<>();
+        List<int[]> parents = new ArrayList<>();
+        Deque<String> stack = new ArrayDeque<>();
+        stack.push(tip);
+        while (!stack.isEmpty()) {
+            String id = stack.peek();
+            if (index.containsKey(id)) {
+                stack.pop();
+                continue;
+            }
+            gitlet.Commit c = pending.computeIfAbsent(id, k -> getCommitObj(k, COMMIT_DIR));
+            boolean ready = true;
+            for (String p : new String[] {c.getParent(), c.getParent2()}) {
+                if (p != null && !index.containsKey(p)) {
+                    stack.push(p);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                stack.pop();
+                pending.remove(id);
+                index.put(id, order.size());
+                order.add(id);
+                parents.add(new int[] {positionOf(index, c.getParent()),
+                    positionOf(index, c.getParent2())});
+            }
+        }
+        byte[] ids = new byte[order.size() * gitlet.ObjectId.LENGTH];
+        int[] flat = new int[order.size() * 2];
+        for (int i = 0; i < order.size(); i++) {
+            gitlet.ObjectId.fromHex(order.get(i)).copyTo(ids, i * gitlet.ObjectId.LENGTH);
+            flat[2 * i] = parents.get(i)[0];
+            flat[2 * i + 1] = parents.get(i)[1];
+        }
+        return new Graph(ids, flat);
+    }
+
+    /** Return the index of the commit, or -1 if it is null. **/
+    private static int positionOf(Map<String, Integer> index, String id) {
+        return id == null ? -1 : index.get(id);
+    }
+
+    /** Read the state, each key with its values in the order they were added. **/
+    private static Map<String, List<String>> readState() {
+        if (!STATE.exists()) {
+            throw error("Not bisecting; run bisect start first.");
+        }
+        Map<String, List<String>> state = new HashMap<>();
+        for (String line : readContentsAsString(STATE).split("\n")) {
+            String[] kv = line.split(" ", 2);
+            if (kv.length == 2) {
+                state.computeIfAbsent(kv[0], k -> new ArrayList<>()).add(kv[1]);
+            }
+        }
+        return state;
+    }
+
+    /** Write the state. **/
+    private static void writeState(Map<String, List<String>> state) {
+        StringBuilder sb = new StringBuilder();
+        for (String key : new String[] {"branch", "current", "bad", "good"}) {
+            for (String value : state.getOrDefault(key, List.of())) {
+                sb.append(key).append(' ').append(value).append('\n');
+            }
+        }
+        writeContents(STATE, sb.toString());
+    }
+}
@@ -0,0 +1,101 @@
+package gitlet;
+import java.io.File;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Utils.*;
+
+/** Bloom filter over the file names a commit changed relative to its first parent.
+ *  A negative answer is exact, so a history walk can skip the tree comparison
+ *  for every commit whose filter rules the path out.
+ *  @author Vivek Singh
+ */
+public class BloomFilter implements Serializable {
+    /** Fixed so that stored filters stay readable when this class changes; the value
+     * is the one computed for the class that wrote them. **/
+    private static final long serialVersionUID = 2609131089166284247L;
+    /** Directory that stores one filter per commit, named by the commit id **/
+    static final File BLOOM_DIR = join(GITLET_DIR, "bloom");
+    /** Bits reserved for every inserted path **/
+    private static final int BITS_PER_ENTRY = 10;
+    /** Number of bit positions set for every path **/
+    private static final int NUM_HASHES = 7;
+
+    /** The bit array **/
+    private long[] bits;
+
+    /** Create a filter sized for n entries. **/
+    BloomFilter(int n) {
+        int numBits = Math.max(64, n * BITS_PER_ENTRY);
+        bits = new long[(numBits + 63) / 64];
+    }
+
+    /** Create a filter containing all the given paths. **/
+    public static BloomFilter of(Collection<String> paths) {
+        BloomFilter f = new BloomFilter(paths.size());
+        for (String path : paths) {
+            f.add(path);
+        }
+        return f;
+    }
+
+    /** Insert the path into the filter. **/
+    void add(String path) {
+        long h = hash(path);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        long numBits = (long) bits.length * 64;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            int bit = (int) (((h1 + (long) i * h2) & Long.MAX_VALUE) % numBits);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /** Return false if the path was definitely not inserted into the filter. **/
+    public boolean mightContain(String path) {
+        long h = hash(path);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        long numBits = (long) bits.length * 64;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            int bit = (int) (((h1 + (long) i * h2) & Long.MAX_VALUE) % numBits);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** 64-bit FNV-1a hash of the UTF-8 bytes of the path, finished with a mixing step
+     * so that both halves can be used as independent hash values. **/
+    private static long hash(String path) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /** Store the changed-path filter of the given commit. **/
+    public static void saveFor(String commitID, Collection<String> changedPaths) {
+        if (!BLOOM_DIR.exists()) {
+            BLOOM_DIR.mkdir();
+        }
+        writeObject(join(BLOOM_DIR, commitID), of(changedPaths));
+    }
+
+    /** Return the changed-path filter of the given commit, or null if none was stored. **/
+    public static BloomFilter loadFor(String commitID) {
+        File f = join(BLOOM_DIR, commitID);
+        if (!f.exists()) {
+            return null;
+        }
+        return readObject(f, BloomFilter.class);
+    }
+}
@@ -0,0 +1,133 @@
+package gitlet;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** Bundles carry history between repositories that cannot see each other.
+ *  A bundle is one sequential file: a header naming the branch and its tip,
+ *  the prerequisite commits the receiving repository must already have, and
+ *  then a pack stream of the objects themselves.
+ *  @author Vivek Singh
+ */
+public class Bundle {
+    /** Marks the start of a bundle **/
+    private static final String MAGIC = "GITLETBUNDLE";
+    /** Version of the bundle format **/
+    private static final int VERSION = 1;
+    /** Namespace of the branches created by unbundling **/
+    private static final String BUNDLE_PREFIX = "bundle/";
+    /** Buffer size of the bundle file streams **/
+    private static final int BUFFER = 1 << 16;
+
+    /** Write the history of the given branch to file. If base is not null, history
+     * reachable from base is left out and base's boundary becomes a prerequisite. **/
+    public static void create(String file, String branch, String base) {
+        String tip = REFS.read(branch);
+        if (tip == null) {
+            throw error("A branch with that name does not exist.");
+        }
+        List<String> haves = new ArrayList<>();
+        if (base != null) {
+            String baseID = gitlet.Commit.checkIfCommitExists(base);
+            if (baseID.length() == 0) {
+                throw error("No commit with that id exists.");
+            }
+            haves.add(baseID);
+        }
+
+        Set<String> prerequisites = new TreeSet<>();
+        List<gitlet.Pack.Entry> objects = gitlet.Pack.negotiate(GITLET_DIR, List.of(tip), haves, prerequisites);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), BUFFER))) {
+            out.writeUTF(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(1);
+            out.writeUTF(branch);
+            out.writeUTF(tip);
+            out.writeInt(prerequisites.size());
+            for (String id : prerequisites) {
+                out.writeUTF(id);
+            }
+            gitlet.Pack.write(GITLET_DIR, objects, out);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Apply the bundle in file to this repository. The objects are stored and each
+     * branch in the bundle is written as bundle/BRANCH. **/
+    public static void unbundle(String file) {
+        File f = new File(file);
+        if (!f.isFile()) {
+            throw error("Bundle file does not exist.");
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(f), BUFFER))) {
+            if (!in.readUTF().equals(MAGIC) || in.readInt() != VERSION) {
+                throw error("Not a gitlet bundle.");
+            }
+            int numRefs = in.readInt();
+            List<String> names = new ArrayList<>();
+            List<String> tips = new ArrayList<>();
+            for (int i = 0; i < numRefs; i++) {
+                String name = in.readUTF();
+                String tip = in.readUTF();
+                if (!gitlet.RefStore.isValidName(name)) {
+                    throw error("Invalid branch name in bundle: %s", name);
+                }
+                if (!tip.matches("[a-f0-9]{40}")) {
+                    throw error("Invalid commit id in bundle: %s", tip);
+                }
+                names.add(name);
+                tips.add(tip);
+            }
+            List<String> missing = new ArrayList<>();
+            int numPrerequisites = in.readInt();
+            for (int i = 0; i < numPrerequisites; i++) {
+                String id = in.readUTF();
+                if (!join(COMMIT_DIR, id).exists()) {
+                    missing.add(id);
+                }
+            }
+            if (!missing.isEmpty()) {
+                throw error("Repository lacks these prerequisite commits:%n%s",
+                        String.join(System.lineSeparator(), missing));
+            }
+
+            List<String> received = gitlet.Pack.read(in, GITLET_DIR);
+            gitlet.MessageIndex.indexCommits(GITLET_DIR, received);
+            for (String tip : tips) {
+                if (!join(COMMIT_DIR, tip).exists()) {
+                    throw error("The bundle does not contain commit %s.", tip);
+                }
+            }
+
+            gitlet.RefStore.Transaction t = REFS.transaction();
+            gitlet.RefLog.Batch log = REFLOG.batch();
+            for (int i = 0; i < names.size(); i++) {
+                String local = BUNDLE_PREFIX + names.get(i);
+                log.add(local, REFS.read(local), tips.get(i), "unbundle: " + f.getName());
+                t.update(local, tips.get(i));
+            }
+            t.commit();
+            log.write();
+        } catch (EOFException e) {
+            throw error("The bundle is truncated.");
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+}
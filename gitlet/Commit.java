@@ -4,6 +4,9 @@ package gitlet;
 import java.io.File;
 import java.io.Serializable;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import static gitlet.Repository.*;
 import static gitlet.Utils.*;
@@ -21,6 +24,11 @@ public class Commit implements Serializable {
      * variable is used. We've provided one example for `message`.
      */
 
+    /** Fixed so that repositories stay readable when methods of this class change;
+     * the value is the one computed for the first version of the class, which
+     * wrote the commits of every existing repository. */
+    private static final long serialVersionUID = -414400937485485353L;
+
     /** The date the Commit was made. */
     private Date date;
     /** The message of this Commit. */
@@ -32,6 +40,9 @@ public class Commit implements Serializable {
     /** Tree that the commit points to **/
     private String tree;
 
+    /** Matches reflog selectors like master@{2} **/
+    private static final Pattern REFLOG_SELECTOR = Pattern.compile("(.+)@\\{(\\d{1,9})\\}");
+
     Commit(String message, String parent, Date date, String tree, String parent2) {
         this.message = message;
         this.parent = parent;
@@ -40,22 +51,22 @@ public class Commit implements Serializable {
         this.parent2 = parent2;
     }
 
-    String getParent() {
+    public String getParent() {
         return this.parent;
     }
 
-    String getMsg() {
+    public String getMsg() {
         return this.message;
     }
 
-    Date getDate() {
-        return this.date;
+    public Date getDate() {
+        return new Date(this.date.getTime());
     }
 
-    String getTree() {
+    public String getTree() {
         return this.tree;
     }
-    String getParent2() {
+    public String getParent2() {
         return this.parent2;
     }
 
@@ -71,27 +82,38 @@ public class Commit implements Serializable {
         return new Commit(msg, parent, d, tree, p2);
     }
 
-    /** Get the list of all commit files in lexicographical order and print the commits
-     * that contain the specified msg.
+    /** Print the ids of the commits whose message equals msg, in lexicographical order.
      * @param msg The msg to search for
      * */
     public static void findMsgInCommits(String msg) {
-        List<String> files = plainFilenamesIn(COMMIT_DIR);
-        boolean flag = false;
-        for (String file : files) {
-            File f = join(COMMIT_DIR, file);
-            gitlet.Commit commitObj = readObject(f, gitlet.Commit.class);
+        printFoundCommits(gitlet.MessageIndex.load().findExact(msg));
+    }
 
-            if (commitObj.getMsg().equals(msg)) {
-                System.out.println(file);
-                flag = true;
-            }
+    /** Print the ids of the commits whose message contains the given text. **/
+    public static void findSubstringInCommits(String text) {
+        printFoundCommits(gitlet.MessageIndex.load().findSubstring(text));
+    }
+
+    /** Print the ids of the commits whose message matches the given regular expression. **/
+    public static void findRegexInCommits(String regex) {
+        Pattern p;
+        try {
+            p = Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            throw error("Invalid regular expression.");
         }
+        printFoundCommits(gitlet.MessageIndex.load().findRegex(p));
+    }
 
-        if (!flag) {
-            System.out.println("Found no commit with that message.");
+    /** Print each of the found commit ids, or a notice if there are none. **/
+    private static void printFoundCommits(List<String> found) {
+        for (String id : found) {
+            System.out.println(id);
         }
 
+        if (found.isEmpty()) {
+            System.out.println("Found no commit with that message.");
+        }
     }
 
     /** Get the list of all commit files in lexicographical order and print the commits */
@@ -145,6 +167,35 @@ public class Commit implements Serializable {
         System.out.println(generateLogMsg(prevCommitObj));
     }
 
+    /** Traverse commits starting from the HEAD commit to the initial commit
+     * and display the log msg of those that changed the given file. The tree
+     * comparison is skipped for every commit whose changed-path filter rules
+     * the file out. */
+    public static void printPathLog(String fileName) {
+        String commitID = getLatestIDInHEAD();
+        gitlet.Commit c = getLatestCommitObj(commitID);
+
+        while (c.getParent() != null) {
+            gitlet.Commit parentObj = getLatestCommitObj(c.getParent());
+            gitlet.BloomFilter filter = gitlet.BloomFilter.loadFor(commitID);
+            if ((filter == null || filter.mightContain(fileName))
+                    && !Objects.equals(blobIn(c, fileName), blobIn(parentObj, fileName))) {
+                System.out.println(generateLogMsg(c));
+            }
+            commitID = c.getParent();
+            c = parentObj;
+        }
+    }
+
+    /** Return the blob id of the file in the given commit, or null if it is not tracked. */
+    private static String blobIn(gitlet.Commit c, String fileName) {
+        gitlet.Tree t = getCommitTreeObj(c);
+        if (t == null) {
+            return null;
+        }
+        return t.get(fileName);
+    }
+
     /** Get the commit object from a directory */
     public static gitlet.Commit getCommitObj(String fileName, File dir) {
         File filePath = join(dir, fileName);
@@ -162,6 +213,12 @@ public class Commit implements Serializable {
         return readObject(filePath, gitlet.Tree.class);
     }
 
+    /** Get the tree object of the commit with the given id, an empty tree if it has none */
+    public static gitlet.Tree treeOf(String commitID) {
+        gitlet.Tree t = getCommitTreeObj(getCommitObj(commitID, COMMIT_DIR));
+        return t == null ? gitlet.Tree.createTree() : t;
+    }
+
     /** Get the latest commit obj */
     public static gitlet.Commit getLatestCommitObj(String commitID) {
         return getCommitObj(commitID, COMMIT_DIR);
@@ -175,6 +232,9 @@ public class Commit implements Serializable {
     /** Create a new commit with the given message, can be a merge or regular
      * commit. */
     public static void createANewCommit(String msg, String type, String branch) {
+        gitlet.Tree indexTreeObj = readIndex();
+        Set<String> changedPaths = new HashSet<>(indexTreeObj.getMap().keySet());
+        changedPaths.addAll(indexTreeObj.getRemoveSet());
         gitlet.Tree newTreeObj = getNewCombinedCommitObj();
         byte[] serialiseTreeObj = serialize(newTreeObj);
         String newObjSHA = sha1(serialiseTreeObj);
@@ -182,7 +242,7 @@ public class Commit implements Serializable {
         String parent = getLatestIDInHEAD();
 
         File path = createTreeObj(serialiseTreeObj);
-        writeObject(path, newTreeObj);
+        gitlet.Durable.stage(path, serialiseTreeObj);
 
         gitlet.Commit newCommit;
 
@@ -193,14 +253,35 @@ public class Commit implements Serializable {
         }
         byte[] serialisedCommit = serialize(newCommit);
         File newCommitFile = createCommitObj(serialisedCommit);
-        writeObject(newCommitFile, newCommit);
+        gitlet.Durable.stage(newCommitFile, serialisedCommit);
+        gitlet.MessageIndex.indexCommit(sha1(serialisedCommit), msg);
+        gitlet.BloomFilter.saveFor(sha1(serialisedCommit), changedPaths);
 
-        updateActiveBranch(serialisedCommit);
+        if (type.equals("regular")) {
+            updateActiveBranch(serialisedCommit, parent, "commit: " + msg);
+        } else {
+            updateActiveBranch(serialisedCommit, parent, "commit (merge): " + msg);
+        }
         clearStagingArea();
     }
 
-    /** Check if a commit with the given id exits **/
+    /** Stage the tree t and a commit of it with the given fields, and return the id of the commit. **/
+    static String stageCommit(String msg, String parent, String parent2, Date d, gitlet.Tree t) {
+        byte[] tree = serialize(t);
+        gitlet.Durable.stage(createTreeObj(tree), tree);
+        byte[] commit = serialize(new Commit(msg, parent, d, sha1(tree), parent2));
+        gitlet.Durable.stage(createCommitObj(commit), commit);
+        return sha1(commit);
+    }
+
+    /** Check if a commit with the given id exits. The id may also be a reflog
+     * selector such as master@{2}, which names the third most recent value of a ref. **/
     public static String checkIfCommitExists(String commitID) {
+        Matcher m = REFLOG_SELECTOR.matcher(commitID);
+        if (m.matches()) {
+            gitlet.RefLog.Entry e = REFLOG.entry(m.group(1), Integer.parseInt(m.group(2)));
+            return e == null ? "" : e.newID;
+        }
         return findFileInDir(commitID, COMMIT_DIR);
     }
 
@@ -209,17 +290,17 @@ public class Commit implements Serializable {
         String shaInMaster = getLatestIDInHEAD();
         gitlet.Tree latestCommitTreeObj = getLatestCommitTreeObj(shaInMaster);
 
-        if (latestCommitTreeObj == null || !latestCommitTreeObj.getMap().containsKey(fileName)) {
+        if (latestCommitTreeObj == null || !latestCommitTreeObj.contains(fileName)) {
             return false;
         }
 
-        return latestCommitTreeObj.getMap().get(fileName).equals(sha);
+        return latestCommitTreeObj.get(fileName).equals(sha);
     }
 
     /** Create a merge commit with the given branch and the head branch **/
     public static void createMergeCommit(String branch) {
         String msg  = "Merged " + branch + " into " + readContentsAsString(HEAD) + ".";
-        String branchID = readContentsAsString(join(HEADS_DIR, branch));
+        String branchID = REFS.read(branch);
         createANewCommit(msg, "merge", branchID);
     }
 
@@ -239,7 +320,7 @@ public class Commit implements Serializable {
         if (latestCommitTreeObj == null) {
             return false;
         }
-        return latestCommitTreeObj.getMap().containsKey(fileName);
+        return latestCommitTreeObj.contains(fileName);
     }
 
     /** Merge index and the latest commit to create the new commit obj
@@ -249,27 +330,39 @@ public class Commit implements Serializable {
     public static gitlet.Tree getNewCombinedCommitObj() {
         String prevCommitSHA = getLatestIDInHEAD();
         gitlet.Tree prevCommitTreeObj = getLatestCommitTreeObj(prevCommitSHA);
-        gitlet.Tree indexTreeObj = readObject(INDEX, gitlet.Tree.class);
+        gitlet.Tree indexTreeObj = readIndex();
         removeFilesFromCommit(indexTreeObj.getRemoveSet(), prevCommitTreeObj);
         return mergeObjs(prevCommitTreeObj, indexTreeObj);
     }
 
-    /** Reset the CWD to the given Commit **/
+    /** Reset the CWD to the given Commit, once the branch has been moved to it **/
     public static void resetToCommit(String commitID) {
+        String branch = getActiveBranch();
+        String oldID = REFS.read(branch);
         gitlet.Tree t2 = getCommitTreeObj(getCommitObj(commitID, COMMIT_DIR));
         Set<String> filesToRemove = new HashSet<>(plainFilenamesIn(CWD));
-        Set<String> filesOtherCommit;
+        if (!REFS.compareAndSwap(branch, oldID, commitID)) {
+            gitlet.LockFile.fail("Branch " + branch + " was moved by another command; try again.");
+        }
+        String reason = "reset: moving to " + commitID;
+        REFLOG.batch()
+                .add(branch, oldID, commitID, reason)
+                .add(gitlet.RefLog.HEAD_LOG, oldID, commitID, reason)
+                .write();
 
         if (t2 != null) {
-            filesOtherCommit = t2.getMap().keySet();
-            for (String file : filesOtherCommit) {
-                if (join(CWD, file).exists()) {
-                    overwriteFile(file, t2.getMap().get(file), CWD);
+            gitlet.Promisor.fetchBlobs(idsInCone(t2));
+            t2.forEach((file, blobID) -> {
+                /* A file outside the cone that is still here was kept on purpose; leave it. */
+                filesToRemove.remove(file);
+                if (!gitlet.Sparse.includes(file)) {
+                    return;
+                } else if (join(CWD, file).exists()) {
+                    overwriteFile(file, blobID, CWD);
                 } else {
-                    createFileWithContents(join(CWD, file), join(BLOB_DIR, t2.getMap().get(file)));
+                    createFileWithContents(join(CWD, file), blobFile(blobID));
                 }
-            }
-            filesToRemove.removeAll(filesOtherCommit);
+            });
         }
 
         for (String file : filesToRemove) {
@@ -279,8 +372,6 @@ public class Commit implements Serializable {
         if (INDEX.exists()) {
             clearStagingArea();
         }
-        String branch = getActiveBranch();
-        writeContents(join(HEADS_DIR, branch), commitID);
     }
 
     /** Find the SHA of the initial commit **/
@@ -0,0 +1,136 @@
+package gitlet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static gitlet.Utils.*;
+
+/** Crash-safe writes of objects.
+ *  An object is first written to a temporary file under objects/tmp. At the
+ *  next barrier every pending temporary file is flushed to disk, one flush per
+ *  file, then all of them are renamed into place in the order they were staged,
+ *  and each directory that received them is flushed once. A command stages its
+ *  blobs, then its tree, then its commit, and the lock files of the index and
+ *  the refs raise a barrier before they are installed, so a ref or the index
+ *  never names an object that a crash could lose. What the barrier saves is
+ *  the directory flushes, one per directory instead of one per object, not the
+ *  flushes of the files themselves.
+ *  The message index, the Bloom filters and the reflog are written directly,
+ *  outside any barrier and without flushes. A crash can lose their entries for
+ *  the last commits: find and reflog then do not show those commits, and log
+ *  of a path compares their trees instead of using a filter.
+ *  @author Vivek Singh
+ */
+public class Durable {
+    /** Objects written to temporary files but not yet in place, final file to temporary file **/
+    private static final Map<File, File> PENDING = new LinkedHashMap<>();
+
+    /** Stage contents as the object file dest. Objects are named by their contents,
+     * so nothing is written if dest already exists or is already staged. An existing
+     * dest has its modification time refreshed instead, so that a concurrent gc sees
+     * it as just written and does not remove an old unreachable object this command
+     * makes reachable again. The contents are written outside the lock, so several
+     * threads can stage at once. **/
+    public static void stage(File dest, Object... contents) {
+        synchronized (Durable.class) {
+            if (PENDING.containsKey(dest)) {
+                return;
+            }
+        }
+        if (dest.setLastModified(System.currentTimeMillis())) {
+            return;
+        }
+        File tmpDir = tmpDir(dest);
+        tmpDir.mkdirs();
+        File tmp;
+        try {
+            tmp = Files.createTempFile(tmpDir.toPath(), dest.getName(), ".tmp").toFile();
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        writeContents(tmp, contents);
+        synchronized (Durable.class) {
+            if (PENDING.putIfAbsent(dest, tmp) != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /** Return the directory of temporary files for the object file dest,
+     * objects/tmp of the repository it belongs to. **/
+    static File tmpDir(File dest) {
+        return join(dest.getParentFile().getParentFile(), "tmp");
+    }
+
+    /** Make every staged object durable and put it in place. **/
+    public static synchronized void barrier() {
+        if (PENDING.isEmpty()) {
+            return;
+        }
+        for (File tmp : PENDING.values()) {
+            force(tmp);
+        }
+        Set<File> dirs = new LinkedHashSet<>();
+        for (Map.Entry<File, File> e : PENDING.entrySet()) {
+            rename(e.getValue(), e.getKey());
+            dirs.add(e.getKey().getParentFile());
+        }
+        PENDING.clear();
+        for (File dir : dirs) {
+            force(dir);
+        }
+    }
+
+    /** Drop every staged object. **/
+    public static synchronized void discard() {
+        for (File tmp : PENDING.values()) {
+            tmp.delete();
+        }
+        PENDING.clear();
+    }
+
+    /** Return the temporary files under objects/tmp of gitletDir. **/
+    static List<File> leftovers(File gitletDir) {
+        List<File> files = new ArrayList<>();
+        File dir = join(gitletDir, "objects", "tmp");
+        List<String> names = plainFilenamesIn(dir);
+        if (names != null) {
+            for (String name : names) {
+                files.add(join(dir, name));
+            }
+        }
+        return files;
+    }
+
+    /** Atomically rename from over to. **/
+    static void rename(File from, File to) {
+        try {
+            Files.move(from.toPath(), to.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Flush the file or directory f to disk. Directories that cannot be opened
+     * for this, as on Windows, are skipped. **/
+    static void force(File f) {
+        try (FileChannel ch = FileChannel.open(f.toPath(),
+                f.isDirectory() ? StandardOpenOption.READ : StandardOpenOption.WRITE)) {
+            ch.force(true);
+        } catch (IOException e) {
+            if (!f.isDirectory()) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package gitlet;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** Integrity check of every object and reference in the repository.
+ *  Each object is re-hashed and compared with its file name, and every id it
+ *  refers to must resolve to an existing object. The objects are checked on a
+ *  work-stealing pool that is larger than the number of cores, since most of
+ *  the time goes to waiting on reads.
+ *  @author Vivek Singh
+ */
+public class Fsck {
+    /** Delay before progress is first reported, so quick checks stay quiet **/
+    private static final long PROGRESS_DELAY_MILLIS = 1000;
+    /** Number of objects below which a task checks its slice itself instead of splitting it **/
+    private static final int SLICE = 64;
+
+    /** Kinds of objects, with the directory that stores them **/
+    private enum Kind {
+        BLOB(BLOB_DIR), TREE(TREE_DIR), COMMIT(COMMIT_DIR);
+
+        /** Directory of the objects of this kind **/
+        private final File dir;
+
+        Kind(File dir) {
+            this.dir = dir;
+        }
+    }
+
+    /** One object to check **/
+    private static class Obj {
+        private final Kind kind;
+        private final String id;
+
+        Obj(Kind kind, String id) {
+            this.kind = kind;
+            this.id = id;
+        }
+    }
+
+    /** Problems found so far **/
+    private final List<String> problems = Collections.synchronizedList(new ArrayList<>());
+    /** Objects checked so far **/
+    private final AtomicLong checked = new AtomicLong();
+    /** Bytes hashed so far **/
+    private final AtomicLong bytes = new AtomicLong();
+
+    /** Check the whole repository and print every problem found, followed by a summary. **/
+    public static void check() {
+        Fsck fsck = new Fsck();
+        List<Obj> objects = new ArrayList<>();
+        for (Kind kind : Kind.values()) {
+            for (String id : plainFilenamesIn(kind.dir)) {
+                objects.add(new Obj(kind, id));
+            }
+        }
+
+        long start = System.nanoTime();
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "fsck-progress");
+            t.setDaemon(true);
+            return t;
+        });
+        progress.scheduleAtFixedRate(() -> System.err.printf("Checking objects: %d%% (%d/%d)%n",
+                100 * fsck.checked.get() / Math.max(1, objects.size()), fsck.checked.get(),
+                objects.size()), PROGRESS_DELAY_MILLIS, PROGRESS_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+        try {
+            pool.invoke(fsck.new CheckSlice(objects, 0, objects.size()));
+        } finally {
+            pool.shutdown();
+            progress.shutdownNow();
+        }
+        fsck.checkRefs();
+        double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+
+        List<String> sorted = new ArrayList<>(fsck.problems);
+        Collections.sort(sorted);
+        for (String problem : sorted) {
+            System.out.println(problem);
+        }
+        double mb = fsck.bytes.get() / (1024.0 * 1024.0);
+        System.out.printf("Checked %d objects (%.1f MB) in %.2f s, %.0f objects/s, %.1f MB/s.%n",
+                objects.size(), mb, seconds, objects.size() / seconds, mb / seconds);
+        if (sorted.isEmpty()) {
+            System.out.println("No problems found.");
+        }
+    }
+
+    /** Work-stealing task that checks a slice of the object list. **/
+    private class CheckSlice extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final List<Obj> objects;
+        private final int from;
+        private final int to;
+
+        CheckSlice(List<Obj> objects, int from, int to) {
+            this.objects = objects;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SLICE) {
+                for (int i = from; i < to; i++) {
+                    checkObject(objects.get(i));
+                    checked.incrementAndGet();
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new CheckSlice(objects, from, mid), new CheckSlice(objects, mid, to));
+            }
+        }
+    }
+
+    /** Check the hash of a single object and the ids it refers to. **/
+    private void checkObject(Obj o) {
+        File f = join(o.kind.dir, o.id);
+        byte[] contents = readContents(f);
+        bytes.addAndGet(contents.length);
+        String name = o.kind.name().toLowerCase();
+        if (!sha1(contents).equals(o.id)) {
+            problems.add("error: " + name + " " + o.id + ": hash mismatch");
+            return;
+        }
+        try {
+            if (o.kind == Kind.TREE) {
+                gitlet.Tree t = readObject(contents, gitlet.Tree.class);
+                for (String file : t.paths()) {
+                    String blob = t.get(file);
+                    if (!join(BLOB_DIR, blob).exists() && !gitlet.Promisor.promises(blob)) {
+                        problems.add("error: tree " + o.id + ": missing blob " + blob + " for " + file);
+                    }
+                }
+            } else if (o.kind == Kind.COMMIT) {
+                gitlet.Commit c = readObject(contents, gitlet.Commit.class);
+                if (c.getTree() != null && !join(TREE_DIR, c.getTree()).exists()) {
+                    problems.add("error: commit " + o.id + ": missing tree " + c.getTree());
+                }
+                for (String parent : new String[] {c.getParent(), c.getParent2()}) {
+                    if (parent != null && !join(COMMIT_DIR, parent).exists()) {
+                        problems.add("error: commit " + o.id + ": missing parent " + parent);
+                    }
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            problems.add("error: " + name + " " + o.id + ": cannot be read");
+        }
+    }
+
+    /** Check that every ref, stash and HEAD resolve to existing commits. **/
+    private void checkRefs() {
+        for (String name : REFS.names()) {
+            String id = REFS.read(name);
+            if (id == null || !join(COMMIT_DIR, id).exists()) {
+                problems.add("error: ref " + name + ": missing commit " + id);
+            }
+        }
+        List<String> stashes = gitlet.Stash.ids();
+        for (int i = 0; i < stashes.size(); i++) {
+            if (!join(COMMIT_DIR, stashes.get(i)).exists()) {
+                problems.add("error: stash@{" + i + "}: missing commit " + stashes.get(i));
+            }
+        }
+        String head = getActiveBranch();
+        if (!REFS.exists(head)) {
+            problems.add("error: HEAD points to missing branch " + head);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package gitlet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static gitlet.Commit.getCommitObj;
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** Mark-and-sweep collection of unreachable objects.
+ *  The mark phase walks the commit graph one generation at a time, and every
+ *  generation is processed in parallel, reading its commits and their trees.
+ *  The sweep phase deletes unmarked objects that are older than a grace period
+ *  and were not written after the collection started, so objects that a
+ *  concurrent add or commit has just written, or has made reachable again by
+ *  refreshing its time, are never removed. The start is the modification time
+ *  of a file written when the collection starts, so that it is compared with
+ *  times from the same clock, at the same granularity. The collection holds
+ *  the index lock, so the blobs of an add that is still running are either in
+ *  the index it reads or written after the start.
+ *  @author Vivek Singh
+ */
+public class GarbageCollector {
+    /** Default grace period for unreachable objects, two weeks **/
+    static final long DEFAULT_GRACE_MILLIS = 14L * 24 * 60 * 60 * 1000;
+
+    /** Reachable commit ids **/
+    private final Set<gitlet.ObjectId> commits = ConcurrentHashMap.newKeySet();
+    /** Reachable tree ids **/
+    private final Set<gitlet.ObjectId> trees = ConcurrentHashMap.newKeySet();
+    /** Reachable blob ids **/
+    private final Set<gitlet.ObjectId> blobs = ConcurrentHashMap.newKeySet();
+
+    /** Collect garbage, removing unreachable objects last modified more than
+     * graceMillis ago, and print how many objects were removed. **/
+    public static void collect(long graceMillis) {
+        lockIndex();
+        long cutoff = fileClock() - graceMillis;
+
+        GarbageCollector gc = new GarbageCollector();
+        gc.markFromRoots();
+        /* Roots may have moved while marking, mark from them again before deleting anything. */
+        gc.markFromRoots();
+
+        List<String> removedCommits = gc.sweep(COMMIT_DIR, gc.commits, cutoff);
+        List<String> removedTrees = gc.sweep(TREE_DIR, gc.trees, cutoff);
+        List<String> removedBlobs = gc.sweep(BLOB_DIR, gc.blobs, cutoff);
+
+        if (!removedCommits.isEmpty()) {
+            gitlet.MessageIndex.removeCommits(removedCommits);
+            for (String id : removedCommits) {
+                join(gitlet.BloomFilter.BLOOM_DIR, id).delete();
+            }
+        }
+        /* Temporary files of commands that died before their objects went in place. */
+        for (File f : gitlet.Durable.leftovers(GITLET_DIR)) {
+            if (f.lastModified() < cutoff) {
+                f.delete();
+            }
+        }
+        int total = removedCommits.size() + removedTrees.size() + removedBlobs.size();
+        System.out.println("Removed " + total + " unreachable objects.");
+    }
+
+    /** Return the modification time of a file written now. Every object written
+     * later gets a time at least as late, however coarse the clock of the file system. **/
+    private static long fileClock() {
+        File tmpDir = join(GITLET_DIR, "objects", "tmp");
+        tmpDir.mkdirs();
+        try {
+            File probe = Files.createTempFile(tmpDir.toPath(), "gc", ".tmp").toFile();
+            long time = probe.lastModified();
+            probe.delete();
+            return time;
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Mark everything reachable from the refs, the reflogs, the stashes and the staging area. **/
+    private void markFromRoots() {
+        Set<String> roots = new TreeSet<>();
+        List<String> refNames = REFS.names();
+        for (String name : refNames) {
+            String id = REFS.read(name);
+            if (id != null) {
+                roots.add(id);
+            }
+        }
+        List<String> logs = new ArrayList<>(refNames);
+        logs.add(gitlet.RefLog.HEAD_LOG);
+        for (String log : logs) {
+            for (gitlet.RefLog.Entry e : REFLOG.entries(log)) {
+                roots.add(e.newID);
+                if (e.oldID != null) {
+                    roots.add(e.oldID);
+                }
+            }
+        }
+        roots.addAll(gitlet.Stash.ids());
+        if (INDEX.exists()) {
+            markBlobs(readIndex());
+        }
+        markCommits(roots);
+    }
+
+    /** Mark the given commits and all their ancestors, one generation at a time. **/
+    private void markCommits(Collection<String> roots) {
+        List<String> frontier = new ArrayList<>(roots);
+        while (!frontier.isEmpty()) {
+            frontier = frontier.parallelStream()
+                    .filter(id -> join(COMMIT_DIR, id).exists()
+                            && commits.add(gitlet.ObjectId.fromHex(id)))
+                    .flatMap(this::markCommit)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /** Mark the tree and blobs of the commit and return its parents. **/
+    private Stream<String> markCommit(String id) {
+        gitlet.Commit c = getCommitObj(id, COMMIT_DIR);
+        String tree = c.getTree();
+        if (tree != null && trees.add(gitlet.ObjectId.fromHex(tree)) && join(TREE_DIR, tree).exists()) {
+            markBlobs(readObject(join(TREE_DIR, tree), gitlet.Tree.class));
+        }
+        return Stream.of(c.getParent(), c.getParent2()).filter(p -> p != null);
+    }
+
+    /** Mark the blobs of the tree t. **/
+    private void markBlobs(gitlet.Tree t) {
+        for (String blob : t.ids()) {
+            blobs.add(gitlet.ObjectId.fromHex(blob));
+        }
+    }
+
+    /** Delete the objects in dir that are not marked and were last modified before cutoff.
+     * @return the ids of the deleted objects. **/
+    private List<String> sweep(File dir, Set<gitlet.ObjectId> marked, long cutoff) {
+        List<String> removed = new ArrayList<>();
+        for (String id : plainFilenamesIn(dir)) {
+            File f = join(dir, id);
+            boolean live = gitlet.ObjectId.isId(id) && marked.contains(gitlet.ObjectId.fromHex(id));
+            if (!live && f.lastModified() < cutoff && f.delete()) {
+                removed.add(id);
+            }
+        }
+        return removed;
+    }
+}
@@ -34,16 +34,16 @@ public class GraphObj {
     /**
      * Create a mapping of random Node Integer Vals with their corresponding file
      * names.
-     * @return Map of FileNames and their Node Vals in the graph.
+     * @return Map of commit ids and their Node Vals in the graph.
      */
-    public static HashMap<String, Integer> createGraphMap() {
-        HashMap<String, Integer> graphMap = new HashMap<>();
+    public static HashMap<gitlet.ObjectId, Integer> createGraphMap() {
+        HashMap<gitlet.ObjectId, Integer> graphMap = new HashMap<>();
         List<String> commits = plainFilenamesIn(COMMIT_DIR);
 
         int count  = 0;
 
         for (String commit : commits) {
-            graphMap.put(commit, count++);
+            graphMap.put(gitlet.ObjectId.fromHex(commit), count++);
         }
         return graphMap;
     }
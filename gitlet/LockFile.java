@@ -0,0 +1,157 @@
+package gitlet;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static gitlet.Utils.*;
+
+/** Lock files that guard the index, HEAD and every ref against concurrent commands.
+ *  To change FILE, a command creates FILE.lock, which fails if another command
+ *  holds it, writes the new contents into the lock file and renames it over
+ *  FILE once it is on disk. Readers never take the lock: the rename replaces FILE atomically, so
+ *  they see either the old or the new contents.
+ *  Locks still held when the command ends are committed if it ran to completion
+ *  or stopped on a user error, and rolled back if it failed through fail or
+ *  died of an unexpected exception.
+ *  @author Vivek Singh
+ */
+public class LockFile {
+    /** How long to keep retrying a lock held by another command **/
+    private static final long TIMEOUT_MILLIS = 2000;
+    /** First pause between retries, doubled up to MAX_BACKOFF_MILLIS **/
+    private static final long BACKOFF_MILLIS = 5;
+    /** Longest pause between retries **/
+    private static final long MAX_BACKOFF_MILLIS = 100;
+
+    /** Locks held by this process, by target file **/
+    private static final Map<File, LockFile> HELD = new LinkedHashMap<>();
+    /** Set when the command failed and its pending changes must not be installed **/
+    private static volatile boolean failed = false;
+
+    static {
+        Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((t, e) -> {
+            failed = true;
+            if (previous != null) {
+                previous.uncaughtException(t, e);
+            } else {
+                e.printStackTrace();
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(LockFile::releaseAll, "gitlet-lock-release"));
+    }
+
+    /** File guarded by this lock **/
+    private final File target;
+    /** The lock file itself **/
+    private final File lock;
+    /** Whether new contents were written into the lock file **/
+    private boolean written;
+
+    private LockFile(File target) {
+        this.target = target;
+        this.lock = new File(target.getPath() + ".lock");
+    }
+
+    /** Return this process's lock on target, taking it if it is not held yet.
+     * Waits for a lock held by another command, and ends the command if it is
+     * not released in time. **/
+    public static LockFile acquire(File target) {
+        synchronized (LockFile.class) {
+            LockFile held = HELD.get(target);
+            if (held != null) {
+                return held;
+            }
+        }
+        LockFile l = new LockFile(target);
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        long backoff = BACKOFF_MILLIS;
+        try {
+            while (!l.lock.createNewFile()) {
+                if (System.currentTimeMillis() > deadline) {
+                    fail("Unable to lock " + target.getName()
+                            + ": another gitlet command is running. Try again later.");
+                }
+                Thread.sleep(backoff);
+                backoff = Math.min(2 * backoff, MAX_BACKOFF_MILLIS);
+            }
+        } catch (IOException | InterruptedException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        synchronized (LockFile.class) {
+            HELD.put(target, l);
+        }
+        return l;
+    }
+
+    /** Return the lock this process holds on target, or null. **/
+    static synchronized LockFile heldOn(File target) {
+        return HELD.get(target);
+    }
+
+    /** Write new contents for the target into the lock file. **/
+    public void write(Object... contents) {
+        writeContents(lock, contents);
+        written = true;
+    }
+
+    /** Return the file holding the current contents: the lock file once new
+     * contents were written into it, the target before that. **/
+    public File current() {
+        return written ? lock : target;
+    }
+
+    /** Install the written contents by renaming the lock file over the target,
+     * or just drop the lock if nothing was written. Objects staged so far are
+     * made durable first, and the new contents are on disk before the rename. **/
+    public synchronized void commit() {
+        synchronized (LockFile.class) {
+            HELD.remove(target);
+        }
+        if (written) {
+            gitlet.Durable.barrier();
+            gitlet.Durable.force(lock);
+            gitlet.Durable.rename(lock, target);
+            gitlet.Durable.force(target.getParentFile());
+        } else {
+            lock.delete();
+        }
+    }
+
+    /** Drop the lock and whatever was written into it. **/
+    public synchronized void rollback() {
+        synchronized (LockFile.class) {
+            HELD.remove(target);
+        }
+        lock.delete();
+    }
+
+    /** End the command with msg, rolling back every lock this process holds. **/
+    static void fail(String msg) {
+        failed = true;
+        throw new GitletException(msg);
+    }
+
+    /** Commit or roll back every lock still held when the process ends. **/
+    private static void releaseAll() {
+        List<LockFile> locks;
+        synchronized (LockFile.class) {
+            locks = new ArrayList<>(HELD.values());
+        }
+        for (LockFile l : locks) {
+            if (failed) {
+                l.rollback();
+            } else {
+                l.commit();
+            }
+        }
+        if (failed) {
+            gitlet.Durable.discard();
+        } else {
+            gitlet.Durable.barrier();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package gitlet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import static gitlet.Commit.getCommitObj;
+import static gitlet.Repository.*;
+
+/** Log of every commit reachable from some tips, children before parents.
+ *  A first walk reads each commit once, keeps it in a node and counts its
+ *  children. The second is a k-way walk driven by a priority queue over the
+ *  nodes, printing from the commits they hold: it starts from the commits
+ *  without children, always prints the newest commit whose children are all
+ *  printed, and queues a parent once its last child is printed. Commits of
+ *  different branches then come out interleaved by date, and no commit ever
+ *  comes before one of its children, even with clocks that disagree.
+ *  With a graph, each commit is drawn in one of a row of columns, each column
+ *  the commit expected next on that line of history, with / and \ where
+ *  columns join or fork at merges. Drawing adds only that row of columns to
+ *  the nodes, which take memory in the length of the history.
+ *  @author Vivek Singh
+ */
+public class LogGraph {
+    /** A commit of the walk **/
+    private static final class Node {
+        final String id;
+        final gitlet.Commit commit;
+        final String parent;
+        final String parent2;
+        final long time;
+        /** Children not printed yet **/
+        int children;
+
+        Node(String id, gitlet.Commit c) {
+            this.id = id;
+            this.commit = c;
+            this.parent = c.getParent();
+            this.parent2 = c.getParent2();
+            this.time = c.getDate().getTime();
+        }
+    }
+
+    /** Commit expected next in every column, or null if the graph is not drawn **/
+    private final List<String> columns;
+
+    private LogGraph(boolean graph) {
+        this.columns = graph ? new ArrayList<>() : null;
+    }
+
+    /** Print the log of every branch, or of the current one only, drawn as a graph or not. **/
+    public static void print(boolean all, boolean graph) {
+        Collection<String> tips = new ArrayList<>();
+        if (all) {
+            for (String branch : REFS.names()) {
+                tips.add(REFS.read(branch));
+            }
+        } else {
+            tips.add(getLatestIDInHEAD());
+        }
+        new LogGraph(graph).walk(tips);
+    }
+
+    /** Print the commits reachable from the tips, children first, newest first. **/
+    private void walk(Collection<String> tips) {
+        Map<String, Node> nodes = new HashMap<>();
+        Deque<String> stack = new ArrayDeque<>(tips);
+        while (!stack.isEmpty()) {
+            String id = stack.pop();
+            if (nodes.containsKey(id)) {
+                continue;
+            }
+            Node n = new Node(id, getCommitObj(id, COMMIT_DIR));
+            nodes.put(id, n);
+            for (String p : new String[] {n.parent, n.parent2}) {
+                if (p != null) {
+                    stack.push(p);
+                }
+            }
+        }
+        for (Node n : nodes.values()) {
+            for (String p : new String[] {n.parent, n.parent2}) {
+                if (p != null) {
+                    nodes.get(p).children++;
+                }
+            }
+        }
+
+        PriorityQueue<Node> queue = new PriorityQueue<>((a, b) ->
+                a.time != b.time ? Long.compare(b.time, a.time) : a.id.compareTo(b.id));
+        for (Node n : nodes.values()) {
+            if (n.children == 0) {
+                queue.add(n);
+            }
+        }
+        while (!queue.isEmpty()) {
+            Node n = queue.poll();
+            show(n);
+            for (String p : new String[] {n.parent, n.parent2}) {
+                if (p != null && --nodes.get(p).children == 0) {
+                    queue.add(nodes.get(p));
+                }
+            }
+        }
+    }
+
+    /** Print the commit, with its part of the graph if there is one. **/
+    private void show(Node n) {
+        String text = gitlet.Commit.generateLogMsg(n.commit);
+        if (columns == null) {
+            System.out.println(text);
+            return;
+        }
+        int col = columns.indexOf(n.id);
+        if (col < 0) {
+            columns.add(n.id);
+            col = columns.size() - 1;
+        }
+        join(n.id, col);
+        String[] lines = (text + "\n").split("\n", -1);
+        for (int k = 0; k < lines.length - 1; k++) {
+            System.out.println((row(k == 0 ? col : -1) + " " + lines[k]).stripTrailing());
+        }
+        advance(n, col);
+    }
+
+    /** Return the columns as a row of |, with a * in the column star if it is not -1. **/
+    private String row(int star) {
+        StringBuilder sb = new StringBuilder();
+        for (int j = 0; j < columns.size(); j++) {
+            sb.append(j == 0 ? "" : " ").append(j == star ? '*' : '|');
+        }
+        return sb.toString();
+    }
+
+    /** Join every other column that expects the commit id into its column col,
+     * drawing the join above the commit. **/
+    private void join(String id, int col) {
+        int[] moved = new int[columns.size()];
+        List<String> next = new ArrayList<>();
+        for (int j = 0; j < columns.size(); j++) {
+            if (j != col && columns.get(j).equals(id)) {
+                moved[j] = -2;
+            } else {
+                moved[j] = next.size();
+                next.add(columns.get(j));
+            }
+        }
+        int target = moved[col];
+        for (int j = 0; j < moved.length; j++) {
+            if (moved[j] == -2) {
+                moved[j] = target;
+            }
+        }
+        draw(moved, next.size(), -1);
+        columns.clear();
+        columns.addAll(next);
+    }
+
+    /** Replace the commit in column col by its parents and draw how the columns move. **/
+    private void advance(Node n, int col) {
+        int[] moved = new int[columns.size()];
+        List<String> next = new ArrayList<>();
+        for (int j = 0; j < columns.size(); j++) {
+            if (j == col) {
+                moved[j] = n.parent == null ? -1 : next.size();
+                if (n.parent != null) {
+                    next.add(n.parent);
+                }
+                if (n.parent2 != null) {
+                    next.add(n.parent2);
+                }
+            } else {
+                moved[j] = next.size();
+                next.add(columns.get(j));
+            }
+        }
+        draw(moved, next.size(), n.parent2 != null ? col : -1);
+        columns.clear();
+        columns.addAll(next);
+    }
+
+    /** Print a row where every column j goes on in column moved[j], or ends if that is
+     * -1, and column fork also forks to the right if it is not -1. Nothing is printed
+     * if no column moves or forks. **/
+    private static void draw(int[] moved, int width, int fork) {
+        char[] line = new char[2 * Math.max(moved.length, width) + 1];
+        Arrays.fill(line, ' ');
+        boolean changed = fork >= 0;
+        for (int j = 0; j < moved.length; j++) {
+            if (moved[j] < 0) {
+                continue;
+            } else if (moved[j] == j) {
+                line[2 * j] = '|';
+            } else if (moved[j] < j) {
+                line[2 * j - 1] = '/';
+                for (int k = 2 * moved[j] + 1; k < 2 * j - 1; k++) {
+                    line[k] = line[k] == ' ' ? '_' : line[k];
+                }
+                changed = true;
+            } else {
+                line[2 * j + 1] = '\\';
+                changed = true;
+            }
+        }
+        if (fork >= 0) {
+            line[2 * fork + 1] = '\\';
+        }
+        if (changed) {
+            System.out.println(new String(line).stripTrailing());
+        }
+    }
+}
@@ -1,4 +1,6 @@
 package gitlet;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Set;
 
 /** Driver class for Gitlet, a subset of the Git version-control system.
@@ -10,6 +12,17 @@ public class Main {
      *  <COMMAND> <OPERAND1> <OPERAND2> ... 
      */
     public static void main(String[] args) {
+        gitlet.Trace.command(args.length == 0 ? "" : args[0]);
+        try {
+            gitlet.Trace.time(args.length == 0 ? "" : args[0], () -> dispatch(args));
+        } catch (gitlet.GitletException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /** Run the command in args. Commands report user errors by throwing a
+     * GitletException, whose message is printed by main. */
+    private static void dispatch(String[] args) {
         if (args.length == 0) {
             System.out.println("Please enter a command.");
             System.exit(0);
@@ -27,13 +40,62 @@ public class Main {
                 gitlet.Repository.setupGitlet();
                 break;
 
+            case "clone" :
+                if (gitlet.Repository.checkGitDirExists()) {
+                    System.out.println("A Gitlet version-control system already exists in the current directory.");
+                    System.exit(0);
+                }
+
+                if (args.length == 2) {
+                    gitlet.Promisor.cloneFrom(args[1], false);
+                } else if (args.length == 3 && args[1].equals("--partial")) {
+                    gitlet.Promisor.cloneFrom(args[2], true);
+                } else {
+                    System.out.println("Incorrect operands.");
+                    System.exit(0);
+                }
+                break;
+
+            case "serve" :
+                if (args.length < 2 || args.length > 3 || (args.length == 3 && !args[2].matches("\\d{1,5}"))) {
+                    System.out.println("Incorrect operands.");
+                    System.exit(0);
+                }
+
+                gitlet.Server.serve(args[1], args.length == 3 ? Integer.parseInt(args[2])
+                        : gitlet.Server.DEFAULT_PORT);
+                break;
+
+            case "prefetch" :
+                if (args.length > 2) {
+                    System.out.println("Incorrect operands.");
+                    System.exit(0);
+                }
+                if (!gitlet.Repository.checkGitDirExists()) {
+                    System.out.println("Not in an initialized Gitlet directory.");
+                    System.exit(0);
+                }
+
+                gitlet.Promisor.prefetch(args.length == 2 ? args[1] : null);
+                break;
+
             case "add":
-                validateNumArgs(args, 2);
+                if (args.length < 2) {
+                    System.out.println("Incorrect operands.");
+                    System.exit(0);
+                }
 
                 if (!gitlet.Repository.checkGitDirExists()) {
                     System.out.println("Not in an initialized Gitlet directory.");
                     System.exit(0);
                 }
+                gitlet.Repository.lockIndex();
+
+                if (args.length > 2 || args[1].equals(".")) {
+                    gitlet.AddPipeline.addAll(gitlet.Repository.filesToAdd(
+                            Arrays.copyOfRange(args, 1, args.length)));
+                    break;
+                }
 
                 if (!gitlet.Repository.checkFileExists(args[1])) {
                     System.out.println("File does not exist.");
@@ -54,6 +116,7 @@ public class Main {
                     System.out.println("Not in an initialized Gitlet directory.");
                     System.exit(0);
                 }
+                gitlet.Repository.lockIndex();
 
                 if (!gitlet.Repository.indexExists() || !gitlet.Repository.newFilesTracked()) {
                     System.out.println("No changes added to the commit.");
@@ -75,18 +138,123 @@ public class Main {
                     System.out.println("Not in an initialized Gitlet directory.");
                     System.exit(0);
                 }
+                gitlet.Repository.lockIndex();
 
                 gitlet.Repository.removeFile(args[1]);
                 break;
 
             case "log" :
+                if (!gitlet.Repository.checkGitDirExists()) {
+                    System.out.println("Not in an initialized Gitlet directory.");
+                    System.exit(0);
+                }
+
+                if (args.length == 1) {
+                    gitlet.Commit.printLog();
+                } else if (args.length == 3 && args[1].equals("--")) {
+                    gitlet.Commit.printPathLog(args[2]);
+                } else if (validLogOptions(args)) {
+                    Set<String> options = Set.of(Arrays.copyOfRange(args, 1, args.length));
+                    gitlet.LogGraph.print(options.contains("--all"), options.contains("--graph"));
+                } else {
+                    System.out.println("Incorrect operands.");
+                    System.exit(0);
+                }
+                break;
+
+            case "reflog" :
+                if (args.length > 2) {
+                    System.out.println("Incorrect operands.");
+                    System.exit(0);
+                }
+                if (!gitlet.Repository.checkGitDirExists()) {
+                    System.out.println("Not in an initialized Gitlet directory.");
+                    System.exit(0);
+                }
+
+                gitlet.Repository.printReflog(args.length == 2 ? args[1] : gitlet.RefLog.HEAD_LOG);
+                break;
+
+            case "gc" :
+                if (!gitlet.Repository.checkGitDirExists()) {
+                    System.out.println("Not in an initialized Gitlet directory.");
+                    System.exit(0);
+                }
+
+                if (args.length == 1) {
+                    gitlet.GarbageCollector.collect(gitlet.GarbageCollector.DEFAULT_GRACE_MILLIS);
+                } else if (args.length == 2 && args[1].equals("--prune=now")) {
+                    gitlet.GarbageCollector.collect(0);
+                } else {
+                    System.out.println("Incorrect operands.");
+                    System.exit(0);
+                }
+                break;
+
+            case "stash" :
+                if (!gitlet.Repository.checkGitDirExists()) {
+                    System.out.println("Not in an initialized Gitlet directory.");
+                    System.exit(0);
+                }
+                gitlet.Repository.lockIndex();
+
+                if (args.length == 1 || (args.length == 2 && args[1].equals("push"))) {
+                    gitlet.Stash.push();
+                } else if (args.length == 2 && args[1].equals("list")) {
+                    gitlet.Stash.list();
+                } else if (args.length <= 3 && args[1].equals("pop")) {
+                    gitlet.Stash.pop(args.length == 3 ? args[2] : null);
+                } else if (args.length <= 3 && args[1].equals("drop")) {
+                    gitlet.Stash.drop(args.length == 3 ? args[2] : null);
+                } else {
+                    System.out.println("Incorrect operands.");
+                    System.exit(0);
+                }
+                break;
+
+            case "sparse-checkout" :
+                if (!gitlet.Repository.checkGitDirExists()) {
+                    System.out.println("Not in an initialized Gitlet directory.");
+                    System.exit(0);
+                }
+                gitlet.Repository.lockIndex();
+
+                if (args.length >= 3 && args[1].equals("set")) {
+                    gitlet.Sparse.set(Arrays.copyOfRange(args, 2, args.length));
+                } else if (args.length == 2 && args[1].equals("list")) {
+                    gitlet.Sparse.list();
+                } else if (args.length == 2 && args[1].equals("disable")) {
+                    gitlet.Sparse.disable();
+                } else {
+                    System.out.println("Incorrect operands.");
+                    System.exit(0);
+                }
+                break;
+
+            case "fsck" :
                 validateNumArgs(args, 1);
                 if (!gitlet.Repository.checkGitDirExists()) {
                     System.out.println("Not in an initialized Gitlet directory.");
                     System.exit(0);
                 }
 
-                gitlet.Commit.printLog();
+                gitlet.Fsck.check();
+                break;
+
+            case "bundle" :
+                if (!gitlet.Repository.checkGitDirExists()) {
+                    System.out.println("Not in an initialized Gitlet directory.");
+                    System.exit(0);
+                }
+
+                if (args.length >= 4 && args.length <= 5 && args[1].equals("create")) {
+                    gitlet.Bundle.create(args[2], args[3], args.length == 5 ? args[4] : null);
+                } else if (args.length == 3 && args[1].equals("unbundle")) {
+                    gitlet.Bundle.unbundle(args[2]);
+                } else {
+                    System.out.println("Incorrect operands.");
+                    System.exit(0);
+                }
                 break;
 
             case "global-log" :
@@ -99,12 +267,20 @@ public class Main {
                 break;
 
             case "find" :
-                validateNumArgs(args, 2);
                 if (!gitlet.Repository.checkGitDirExists()) {
                     System.out.println("Not in an initialized Gitlet directory.");
                     System.exit(0);
                 }
-                gitlet.Commit.findMsgInCommits(args[1]);
+                if (args.length == 2) {
+                    gitlet.Commit.findMsgInCommits(args[1]);
+                } else if (args.length == 3 && args[1].equals("--grep")) {
+                    gitlet.Commit.findSubstringInCommits(args[2]);
+                } else if (args.length == 3 && args[1].equals("--regex")) {
+                    gitlet.Commit.findRegexInCommits(args[2]);
+                } else {
+                    System.out.println("Incorrect operands.");
+                    System.exit(0);
+                }
                 break;
 
             case "status" :
@@ -118,17 +294,16 @@ public class Main {
                 break;
 
             case "branch" :
-                validateNumArgs(args, 2);
+                if (args.length < 2) {
+                    System.out.println("Incorrect operands.");
+                    System.exit(0);
+                }
                 if (!gitlet.Repository.checkGitDirExists()) {
                     System.out.println("Not in an initialized Gitlet directory.");
                     System.exit(0);
                 }
 
-                if (gitlet.Repository.branchExists(args[1])) {
-                    System.out.println("A branch with that name already exists.");
-                }
-
-                gitlet.Repository.createBranch(args[1]);
+                gitlet.Repository.createBranch(Arrays.copyOfRange(args, 1, args.length));
                 break;
 
             case "checkout" :
@@ -136,6 +311,7 @@ public class Main {
                     System.out.println("Not in an initialized Gitlet directory.");
                     System.exit(0);
                 }
+                gitlet.Repository.lockIndex();
 
                 if (args.length == 2) {
                     if (!gitlet.Repository.branchExists(args[1])) {
@@ -169,24 +345,39 @@ public class Main {
                 break;
 
             case "rm-branch" :
-                validateNumArgs(args, 2);
+                if (args.length < 2) {
+                    System.out.println("Incorrect operands.");
+                    System.exit(0);
+                }
 
                 if (!gitlet.Repository.checkGitDirExists()) {
                     System.out.println("Not in an initialized Gitlet directory.");
                     System.exit(0);
                 }
 
-                if (!gitlet.Repository.branchExists(args[1])) {
-                    System.out.println("A branch with that name does not exist.");
-                    System.exit(0);
+                for (int i = 1; i < args.length; i++) {
+                    if (!gitlet.Repository.branchExists(args[i])) {
+                        System.out.println("A branch with that name does not exist.");
+                        System.exit(0);
+                    }
+
+                    if (gitlet.Repository.isCurrentBranch(args[i])) {
+                        System.out.println("Cannot remove the current branch.");
+                        System.exit(0);
+                    }
                 }
 
-                if (gitlet.Repository.isCurrentBranch(args[1])) {
-                    System.out.println("Cannot remove the current branch.");
+                gitlet.Repository.removeBranch(Arrays.copyOfRange(args, 1, args.length));
+                break;
+
+            case "pack-refs" :
+                validateNumArgs(args, 1);
+                if (!gitlet.Repository.checkGitDirExists()) {
+                    System.out.println("Not in an initialized Gitlet directory.");
                     System.exit(0);
                 }
 
-                gitlet.Repository.removeBranch(args[1]);
+                gitlet.Repository.REFS.packAll();
                 break;
 
             case "reset" :
@@ -196,6 +387,7 @@ public class Main {
                     System.out.println("Not in an initialized Gitlet directory.");
                     System.exit(0);
                 }
+                gitlet.Repository.lockIndex();
 
                 if (gitlet.Repository.anyUntrackedFiles()) {
                     System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
@@ -216,42 +408,118 @@ public class Main {
                     System.out.println("Not in an initialized Gitlet directory.");
                     System.exit(0);
                 }
+                gitlet.Repository.lockIndex();
+
+                gitlet.Repository.mergeBranch(args[1]);
+                break;
+
+            case "bisect" :
+                if (args.length < 2 || args.length > 3) {
+                    System.out.println("Incorrect operands.");
+                    System.exit(0);
+                }
+                if (!gitlet.Repository.checkGitDirExists()) {
+                    System.out.println("Not in an initialized Gitlet directory.");
+                    System.exit(0);
+                }
+                gitlet.Repository.lockIndex();
+
+                if (args.length == 2 && args[1].equals("start")) {
+                    gitlet.Bisect.start();
+                } else if (args.length == 2 && args[1].equals("reset")) {
+                    gitlet.Bisect.reset();
+                } else if (args[1].equals("good") || args[1].equals("bad")) {
+                    String marked = null;
+                    if (args.length == 3) {
+                        marked = gitlet.Commit.checkIfCommitExists(args[2]);
+                        if (marked.length() == 0) {
+                            System.out.println("No commit with that id exists.");
+                            System.exit(0);
+                        }
+                    }
+                    gitlet.Bisect.mark(args[1], marked);
+                } else {
+                    System.out.println("Incorrect operands.");
+                    System.exit(0);
+                }
+                break;
+
+            case "cherry-pick" :
+                validateNumArgs(args, 2);
+                if (!gitlet.Repository.checkGitDirExists()) {
+                    System.out.println("Not in an initialized Gitlet directory.");
+                    System.exit(0);
+                }
+                gitlet.Repository.lockIndex();
 
-                if (gitlet.Repository.newFilesTracked()) {
-                    System.out.println("You have uncommitted changes.");
+                String picked = gitlet.Commit.checkIfCommitExists(args[1]);
+                if (picked.length() == 0) {
+                    System.out.println("No commit with that id exists.");
                     System.exit(0);
                 }
+                gitlet.Replay.cherryPick(picked);
+                break;
 
-                if (!gitlet.Repository.branchExists(args[1])) {
-                    System.out.println("A branch with that name does not exist.");
+            case "rebase" :
+                validateNumArgs(args, 2);
+                if (!gitlet.Repository.checkGitDirExists()) {
+                    System.out.println("Not in an initialized Gitlet directory.");
                     System.exit(0);
                 }
-                if (gitlet.Repository.isCurrentBranch(args[1])) {
-                    System.out.println("Cannot merge a branch with itself.");
+                gitlet.Repository.lockIndex();
+
+                gitlet.Replay.rebase(args[1]);
+                break;
+
+            case "add-remote" :
+                validateNumArgs(args, 3);
+                if (!gitlet.Repository.checkGitDirExists()) {
+                    System.out.println("Not in an initialized Gitlet directory.");
                     System.exit(0);
                 }
 
-                if (gitlet.Repository.anyUntrackedFiles()) {
-                    System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
+                gitlet.Remote.addRemote(args[1], args[2]);
+                break;
+
+            case "rm-remote" :
+                validateNumArgs(args, 2);
+                if (!gitlet.Repository.checkGitDirExists()) {
+                    System.out.println("Not in an initialized Gitlet directory.");
                     System.exit(0);
                 }
 
-                String splitCommit = gitlet.Repository.findSplitPoint(args[1]);
-                String otherBranch = gitlet.Repository.latestCommitIn(args[1]);
-                String currentBranch = gitlet.Repository.getLatestIDInHEAD();
-                if (splitCommit.equals(otherBranch)) {
-                    System.out.println("Given branch is an ancestor of the current branch.");
+                gitlet.Remote.removeRemote(args[1]);
+                break;
+
+            case "fetch" :
+                validateNumArgs(args, 3);
+                if (!gitlet.Repository.checkGitDirExists()) {
+                    System.out.println("Not in an initialized Gitlet directory.");
                     System.exit(0);
                 }
 
-                if (splitCommit.equals(currentBranch)) {
-                    gitlet.Repository.checkoutBranch(args[1]);
-                    System.out.println("Current branch fast-forwarded.");
+                gitlet.Remote.fetch(args[1], args[2]);
+                break;
+
+            case "push" :
+                validateNumArgs(args, 3);
+                if (!gitlet.Repository.checkGitDirExists()) {
+                    System.out.println("Not in an initialized Gitlet directory.");
                     System.exit(0);
                 }
 
-                gitlet.Repository.merge(splitCommit, args[1]);
+                gitlet.Remote.push(args[1], args[2]);
+                break;
 
+            case "pull" :
+                validateNumArgs(args, 3);
+                if (!gitlet.Repository.checkGitDirExists()) {
+                    System.out.println("Not in an initialized Gitlet directory.");
+                    System.exit(0);
+                }
+                gitlet.Repository.lockIndex();
+
+                gitlet.Remote.pull(args[1], args[2]);
                 break;
             default:
                 System.out.println("No command with that name exists.");
@@ -273,4 +541,16 @@ public class Main {
             System.exit(0);
         }
     }
+
+    /** Check that the arguments of log after the first are --all and --graph,
+     * each at most once. */
+    public static boolean validLogOptions(String[] args) {
+        Set<String> seen = new HashSet<>();
+        for (int i = 1; i < args.length; i++) {
+            if (!(args[i].equals("--all") || args[i].equals("--graph")) || !seen.add(args[i])) {
+                return false;
+            }
+        }
+        return args.length > 1;
+    }
 }
@@ -0,0 +1,567 @@
+package gitlet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** Trigram inverted index over commit messages.
+ *  Every commit gets a document number in the order it was indexed, and every
+ *  three character substring of its message maps to the ascending list of
+ *  document numbers containing it. A query is answered by intersecting the
+ *  posting lists of its own trigrams and verifying the few surviving messages.
+ *  The index is the directory .gitlet/msg-index. Indexing a commit appends its
+ *  id and message to the log there and rewrites nothing. The segment holds the
+ *  sorted trigrams with their posting lists for the start of the log, and is
+ *  rebuilt only once the tail of the log it does not cover outgrows an eighth
+ *  of it. A query maps both files, looks its trigrams up by binary search,
+ *  reads only their posting lists and the messages of the documents that
+ *  survive, and checks the few messages of the tail directly. The index is
+ *  built from the commit objects by the first query that finds it missing.
+ *  @author Vivek Singh
+ */
+public class MessageIndex {
+    /** Name of the directory in .gitlet that stores the index **/
+    static final String MSG_INDEX = "msg-index";
+    /** Log of indexed commits: per commit its id, the length of its message and the message **/
+    private static final String LOG = "log";
+    /** Trigrams and posting lists of the start of the log **/
+    private static final String SEGMENT = "segment";
+    /** Length of the substrings that are indexed **/
+    private static final int GRAM = 3;
+    /** Bytes of log the segment may leave uncovered before it is rebuilt, at least **/
+    private static final int TAIL_LIMIT = 1 << 16;
+    /** Segment header: bytes of log covered, documents, trigrams **/
+    private static final int HEADER = 12;
+    /** Segment trigram entry: the trigram, the length and start of its posting list **/
+    private static final int GRAM_ENTRY = 2 * GRAM + 8;
+    /** Log record header: commit id and message length **/
+    private static final int RECORD = gitlet.ObjectId.LENGTH + 4;
+
+    /** The log **/
+    private final ByteBuffer log;
+    /** The segment, or null if there is none **/
+    private final ByteBuffer segment;
+    /** Log offset of every document the segment does not cover **/
+    private final List<Integer> tail;
+
+    /** Open the index with the given log and segment, which may be empty. **/
+    private MessageIndex(ByteBuffer log, ByteBuffer segment) {
+        this.log = log;
+        boolean valid = segment.capacity() >= HEADER && segment.getInt(0) <= log.capacity();
+        this.segment = valid ? segment : null;
+        this.tail = records(valid ? segment.getInt(0) : 0);
+    }
+
+    /** Return the log of the index in dir read into memory, with no segment, for
+     * the index to be rewritten from it. **/
+    private static MessageIndex readLog(File dir) {
+        File logFile = join(dir, LOG);
+        return new MessageIndex(logFile.exists() ? ByteBuffer.wrap(readContents(logFile))
+                : ByteBuffer.allocate(0), ByteBuffer.allocate(0));
+    }
+
+    /** Load the index of this repository. **/
+    public static MessageIndex load() {
+        return load(GITLET_DIR);
+    }
+
+    /** Load the index of the repository at gitletDir, building it from the commit
+     * objects if it does not exist yet. **/
+    static MessageIndex load(File gitletDir) {
+        File dir = join(gitletDir, MSG_INDEX);
+        if (!dir.isDirectory()) {
+            /* An index written by an older version is a single file. */
+            dir.delete();
+            build(gitletDir, dir);
+        }
+        return new MessageIndex(map(join(dir, LOG)), map(join(dir, SEGMENT)));
+    }
+
+    /** Build the index of the repository at gitletDir from its commit objects in a
+     * temporary directory, and move that into place as dir, unless another command
+     * or thread has done so first. Readers never see a half-built index. **/
+    private static void build(File gitletDir, File dir) {
+        File commitDir = join(gitletDir, "objects", "commits");
+        List<String> ids = new ArrayList<>();
+        List<String> messages = new ArrayList<>();
+        for (String file : plainFilenamesIn(commitDir)) {
+            ids.add(file);
+            messages.add(gitlet.Commit.getCommitObj(file, commitDir).getMsg());
+        }
+        try {
+            File tmp = Files.createTempDirectory(gitletDir.toPath(), MSG_INDEX).toFile();
+            rewrite(tmp, ids, messages);
+            try {
+                Files.move(tmp.toPath(), dir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                for (String name : plainFilenamesIn(tmp)) {
+                    join(tmp, name).delete();
+                }
+                tmp.delete();
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Add a freshly written commit to the on-disk index. **/
+    public static void indexCommit(String commitID, String msg) {
+        append(GITLET_DIR, List.of(commitID), List.of(msg));
+    }
+
+    /** Add commits received from another repository to the index of the repository
+     * at gitletDir, loading each commit once for its message. **/
+    static void indexCommits(File gitletDir, Collection<String> commitIDs) {
+        if (commitIDs.isEmpty() || !join(gitletDir, MSG_INDEX).isDirectory()) {
+            return;
+        }
+        File commitDir = join(gitletDir, "objects", "commits");
+        List<String> ids = new ArrayList<>(commitIDs);
+        List<String> messages = new ArrayList<>();
+        for (String id : ids) {
+            messages.add(gitlet.Commit.getCommitObj(id, commitDir).getMsg());
+        }
+        append(gitletDir, ids, messages);
+    }
+
+    /** Drop the given commits from the on-disk index. **/
+    public static void removeCommits(Collection<String> commitIDs) {
+        File dir = join(GITLET_DIR, MSG_INDEX);
+        if (!dir.isDirectory()) {
+            return;
+        }
+        Set<String> removed = new HashSet<>(commitIDs);
+        MessageIndex old = readLog(dir);
+        List<String> ids = new ArrayList<>();
+        List<String> messages = new ArrayList<>();
+        for (int off : old.records(0)) {
+            String id = old.idAt(off);
+            if (!removed.contains(id)) {
+                ids.add(id);
+                messages.add(old.messageAt(off));
+            }
+        }
+        rewrite(dir, ids, messages);
+    }
+
+    /** Append the commits with the given messages to the log of the index of the
+     * repository at gitletDir, then rebuild the segment if the tail outgrew it.
+     * Nothing is written if the index does not exist yet; it will be built with
+     * these commits by the first query. **/
+    private static void append(File gitletDir, List<String> ids, List<String> messages) {
+        File dir = join(gitletDir, MSG_INDEX);
+        if (!dir.isDirectory()) {
+            return;
+        }
+        List<byte[]> records = new ArrayList<>();
+        int size = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            byte[] record = record(ids.get(i), messages.get(i));
+            records.add(record);
+            size += record.length;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        for (byte[] record : records) {
+            buf.put(record);
+        }
+        buf.flip();
+        File logFile = join(dir, LOG);
+        try (FileChannel ch = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+
+        File segmentFile = join(dir, SEGMENT);
+        ByteBuffer header = ByteBuffer.allocate(4);
+        if (segmentFile.exists()) {
+            try (FileChannel ch = FileChannel.open(segmentFile.toPath(), StandardOpenOption.READ)) {
+                ch.read(header, 0);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        long covered = header.hasRemaining() ? 0 : header.getInt(0);
+        if (logFile.length() - covered > Math.max(TAIL_LIMIT, covered / 8)) {
+            MessageIndex index = readLog(dir);
+            List<Integer> offsets = index.records(0);
+            List<String> all = new ArrayList<>();
+            for (int off : offsets) {
+                all.add(index.messageAt(off));
+            }
+            write(segmentFile, segmentOf(index.log.capacity(), offsets, all));
+        }
+    }
+
+    /** Replace the log and the segment in dir by ones holding exactly the given commits. **/
+    private static void rewrite(File dir, List<String> ids, List<String> messages) {
+        List<Integer> offsets = new ArrayList<>();
+        List<byte[]> records = new ArrayList<>();
+        int size = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            byte[] record = record(ids.get(i), messages.get(i));
+            offsets.add(size);
+            records.add(record);
+            size += record.length;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        for (byte[] record : records) {
+            buf.put(record);
+        }
+        /* The old segment would describe the wrong log while the new one goes in. */
+        join(dir, SEGMENT).delete();
+        write(join(dir, LOG), buf.array());
+        write(join(dir, SEGMENT), segmentOf(size, offsets, messages));
+    }
+
+    /** Return the log record of the commit id with the given message. **/
+    private static byte[] record(String id, String msg) {
+        byte[] text = msg.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.allocate(RECORD + text.length);
+        gitlet.ObjectId.fromHex(id).copyTo(buf.array(), 0);
+        buf.position(gitlet.ObjectId.LENGTH);
+        buf.putInt(text.length);
+        buf.put(text);
+        return buf.array();
+    }
+
+    /** Return a segment over the first covered bytes of the log, whose documents
+     * start at the given offsets and have the given messages. **/
+    private static byte[] segmentOf(int covered, List<Integer> offsets, List<String> messages) {
+        TreeMap<String, List<Integer>> postings = new TreeMap<>();
+        int total = 0;
+        for (int doc = 0; doc < messages.size(); doc++) {
+            for (String gram : trigramsOf(messages.get(doc))) {
+                postings.computeIfAbsent(gram, k -> new ArrayList<>()).add(doc);
+                total++;
+            }
+        }
+        ByteBuffer buf = ByteBuffer.allocate(HEADER + postings.size() * GRAM_ENTRY
+                + 4 * offsets.size() + 4 * total);
+        buf.putInt(covered).putInt(offsets.size()).putInt(postings.size());
+        int start = 0;
+        for (Map.Entry<String, List<Integer>> e : postings.entrySet()) {
+            for (int k = 0; k < GRAM; k++) {
+                buf.putChar(e.getKey().charAt(k));
+            }
+            buf.putInt(e.getValue().size()).putInt(start);
+            start += e.getValue().size();
+        }
+        for (int off : offsets) {
+            buf.putInt(off);
+        }
+        for (List<Integer> list : postings.values()) {
+            for (int doc : list) {
+                buf.putInt(doc);
+            }
+        }
+        return buf.array();
+    }
+
+    /** Write contents to a temporary file next to f and rename it over f. Every
+     * writer has its own temporary file, so concurrent rebuilds do not mix. **/
+    private static void write(File f, byte[] contents) {
+        File tmp;
+        try {
+            tmp = Files.createTempFile(f.getParentFile().toPath(), f.getName(), ".tmp").toFile();
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        writeContents(tmp, contents);
+        gitlet.Durable.rename(tmp, f);
+    }
+
+    /** Return the file mapped read only, empty if it does not exist. **/
+    private static ByteBuffer map(File f) {
+        if (!f.exists()) {
+            return ByteBuffer.allocate(0);
+        }
+        try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Return the offset of every complete log record from the offset from on.
+     * A record cut short by a crash ends the log. **/
+    private List<Integer> records(int from) {
+        List<Integer> offsets = new ArrayList<>();
+        int off = from;
+        while (off + RECORD <= log.capacity()) {
+            int end = off + RECORD + log.getInt(off + gitlet.ObjectId.LENGTH);
+            if (end > log.capacity()) {
+                break;
+            }
+            offsets.add(off);
+            off = end;
+        }
+        return offsets;
+    }
+
+    /** Return the commit id of the log record at off. **/
+    private String idAt(int off) {
+        byte[] id = new byte[gitlet.ObjectId.LENGTH];
+        log.get(off, id);
+        return gitlet.ObjectId.toHex(id);
+    }
+
+    /** Return the message of the log record at off. **/
+    private String messageAt(int off) {
+        byte[] text = new byte[log.getInt(off + gitlet.ObjectId.LENGTH)];
+        log.get(off + RECORD, text);
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    /** Return the distinct trigrams of the string s. **/
+    static TreeSet<String> trigramsOf(String s) {
+        TreeSet<String> grams = new TreeSet<>();
+        for (int i = 0; i + GRAM <= s.length(); i++) {
+            grams.add(s.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    /** Return the log offsets of the documents that may contain every one of the
+     * given trigrams: those of the segment that do, and all of the tail. **/
+    private List<Integer> candidates(TreeSet<String> grams) {
+        List<Integer> result = new ArrayList<>();
+        if (segment != null) {
+            int docs = segment.getInt(4);
+            int docBase = HEADER + segment.getInt(8) * GRAM_ENTRY;
+            for (int doc : segmentCandidates(grams, docs, docBase + 4 * docs)) {
+                result.add(segment.getInt(docBase + 4 * doc));
+            }
+        }
+        result.addAll(tail);
+        return result;
+    }
+
+    /** Return the documents of the segment that contain every one of the given
+     * trigrams, or all of them when there are no trigrams to filter on. The posting
+     * lists start at postBase. **/
+    private int[] segmentCandidates(TreeSet<String> grams, int docs, int postBase) {
+        if (grams.isEmpty()) {
+            int[] all = new int[docs];
+            for (int i = 0; i < all.length; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        List<int[]> lists = new ArrayList<>();
+        for (String gram : grams) {
+            int entry = find(gram);
+            if (entry < 0) {
+                return new int[0];
+            }
+            lists.add(new int[] {segment.getInt(entry + 2 * GRAM), segment.getInt(entry + 2 * GRAM + 4)});
+        }
+        lists.sort((a, b) -> Integer.compare(a[0], b[0]));
+
+        int[] result = new int[lists.get(0)[0]];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = segment.getInt(postBase + 4 * (lists.get(0)[1] + i));
+        }
+        int size = result.length;
+        for (int k = 1; k < lists.size() && size > 0; k++) {
+            int length = lists.get(k)[0];
+            int base = postBase + 4 * lists.get(k)[1];
+            int i = 0;
+            int j = 0;
+            int n = 0;
+            while (i < size && j < length) {
+                int doc = segment.getInt(base + 4 * j);
+                if (result[i] < doc) {
+                    i++;
+                } else if (result[i] > doc) {
+                    j++;
+                } else {
+                    result[n++] = result[i];
+                    i++;
+                    j++;
+                }
+            }
+            size = n;
+        }
+        int[] found = new int[size];
+        System.arraycopy(result, 0, found, 0, size);
+        return found;
+    }
+
+    /** Return the position in the segment of the entry of the trigram, or -1 if
+     * no document has it. **/
+    private int find(String gram) {
+        int lo = 0;
+        int hi = segment.getInt(8) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int entry = HEADER + mid * GRAM_ENTRY;
+            int cmp = 0;
+            for (int k = 0; k < GRAM && cmp == 0; k++) {
+                cmp = Character.compare(segment.getChar(entry + 2 * k), gram.charAt(k));
+            }
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the ids of the commits whose message equals msg, in lexicographic order. **/
+    public List<String> findExact(String msg) {
+        TreeSet<String> result = new TreeSet<>();
+        for (int off : candidates(trigramsOf(msg))) {
+            if (messageAt(off).equals(msg)) {
+                result.add(idAt(off));
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Return the ids of the commits whose message contains text, in lexicographic order. **/
+    public List<String> findSubstring(String text) {
+        TreeSet<String> result = new TreeSet<>();
+        for (int off : candidates(trigramsOf(text))) {
+            if (messageAt(off).contains(text)) {
+                result.add(idAt(off));
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Return the ids of the commits whose message matches the regular expression
+     * anywhere, in lexicographic order. **/
+    public List<String> findRegex(Pattern p) {
+        TreeSet<String> grams = new TreeSet<>();
+        if (p.flags() == 0) {
+            for (String literal : requiredLiterals(p.pattern())) {
+                grams.addAll(trigramsOf(literal));
+            }
+        }
+        TreeSet<String> result = new TreeSet<>();
+        for (int off : candidates(grams)) {
+            if (p.matcher(messageAt(off)).find()) {
+                result.add(idAt(off));
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Return literal runs that every match of the regular expression must contain.
+     * Only plain characters and escaped punctuation are taken as literals. Patterns
+     * with alternation or groups, escapes that take an argument, like \x41 or
+     * \p{L}, and classes that cannot be parsed yield no literals at all, which makes
+     * the query fall back to checking every indexed message. **/
+    static List<String> requiredLiterals(String regex) {
+        List<String> literals = new ArrayList<>();
+        if (regex.indexOf('|') >= 0 || regex.indexOf('(') >= 0) {
+            return literals;
+        }
+        StringBuilder run = new StringBuilder();
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 == regex.length()) {
+                    return new ArrayList<>();
+                }
+                char next = regex.charAt(i + 1);
+                if (!Character.isLetterOrDigit(next)) {
+                    run.append(next);
+                } else if ("dDsSwWbBAzZGRXhHvVntrfae".indexOf(next) >= 0) {
+                    literals.add(run.toString());
+                    run.setLength(0);
+                } else {
+                    return new ArrayList<>();
+                }
+                i += 2;
+            } else if (c == '*' || c == '?' || c == '{') {
+                /* The previous character is optional, so it ends the run without being part of it. */
+                if (run.length() > 0) {
+                    run.setLength(run.length() - 1);
+                }
+                literals.add(run.toString());
+                run.setLength(0);
+                i = (c == '{') ? regex.indexOf('}', i) + 1 : i + 1;
+                if (i == 0) {
+                    return new ArrayList<>();
+                }
+            } else if (c == '[') {
+                literals.add(run.toString());
+                run.setLength(0);
+                i = classEnd(regex, i);
+                if (i < 0) {
+                    return new ArrayList<>();
+                }
+            } else if (c == '.' || c == '+' || c == '^' || c == '$') {
+                literals.add(run.toString());
+                run.setLength(0);
+                i++;
+            } else {
+                run.append(c);
+                i++;
+            }
+        }
+        literals.add(run.toString());
+        literals.removeIf(String::isEmpty);
+        return literals;
+    }
+
+    /** Return the position just past the character class that opens at start, or
+     * -1 if it cannot be parsed. A ] right after the opening [ or [^ is part of
+     * the class, and classes nest, as in [a-z&&[^x]]. **/
+    private static int classEnd(String regex, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '[') {
+                depth++;
+                i++;
+                if (i < regex.length() && regex.charAt(i) == '^') {
+                    i++;
+                }
+                if (i < regex.length() && regex.charAt(i) == ']') {
+                    i++;
+                }
+            } else if (c == '\\') {
+                if (i + 1 < regex.length() && "Qpk".indexOf(regex.charAt(i + 1)) >= 0) {
+                    return -1;
+                }
+                i += 2;
+            } else if (c == ']') {
+                depth--;
+                i++;
+                if (depth == 0) {
+                    return i;
+                }
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+}
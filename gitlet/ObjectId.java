@@ -0,0 +1,172 @@
+package gitlet;
+import java.util.Arrays;
+
+/** The 20-byte SHA-1 id of an object.
+ *  Ids are stored on disk and printed as 40 hexadecimal digits, but a String
+ *  of them takes about a hundred bytes of heap and compares character by
+ *  character. Graph walks and reachability sets that hold many ids use
+ *  ObjectId instead, which keeps the id in two longs and an int, compares
+ *  them without allocating and turns back into hex only for output.
+ *  Ids order like their hex names.
+ *  @author Vivek Singh
+ */
+public final class ObjectId implements Comparable<ObjectId> {
+    /** Length of an id in bytes **/
+    static final int LENGTH = 20;
+    /** Hex digits by value **/
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    /** Value of every ASCII character as a hex digit, -1 if it is none **/
+    private static final byte[] DIGITS = new byte[128];
+
+    static {
+        Arrays.fill(DIGITS, (byte) -1);
+        for (int d = 0; d < HEX.length; d++) {
+            DIGITS[HEX[d]] = (byte) d;
+            DIGITS[Character.toUpperCase(HEX[d])] = (byte) d;
+        }
+    }
+
+    /** Bytes 0-7, 8-15 and 16-19 of the id, big-endian **/
+    private final long w1;
+    private final long w2;
+    private final int w3;
+
+    private ObjectId(long w1, long w2, int w3) {
+        this.w1 = w1;
+        this.w2 = w2;
+        this.w3 = w3;
+    }
+
+    /** Return the id named by 40 hex digits. Throws IllegalArgumentException
+     * if name is not such an id. **/
+    public static ObjectId fromHex(String name) {
+        if (name.length() != 2 * LENGTH) {
+            throw new IllegalArgumentException("not an object id: " + name);
+        }
+        return new ObjectId(hexLong(name, 0, 16), hexLong(name, 16, 16), (int) hexLong(name, 32, 8));
+    }
+
+    /** Return the id made of the first 20 bytes of b, as returned by a SHA-1 digest. **/
+    public static ObjectId fromBytes(byte[] b) {
+        return new ObjectId(bytesLong(b, 0, 8), bytesLong(b, 8, 8), (int) bytesLong(b, 16, 4));
+    }
+
+    /** Return whether s is 40 lower-case hex digits. **/
+    public static boolean isId(String s) {
+        if (s.length() != 2 * LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the 40 hex digits of the id made of the first 20 bytes of b. **/
+    static String toHex(byte[] b) {
+        return toHex(b, 0);
+    }
+
+    /** Return the 40 hex digits of the id made of the 20 bytes of b starting at offset. **/
+    static String toHex(byte[] b, int offset) {
+        char[] out = new char[2 * LENGTH];
+        for (int i = 0; i < LENGTH; i++) {
+            out[2 * i] = HEX[(b[offset + i] >> 4) & 0xf];
+            out[2 * i + 1] = HEX[b[offset + i] & 0xf];
+        }
+        return new String(out);
+    }
+
+    /** Return the 40 hex digits of this id. **/
+    public String name() {
+        char[] out = new char[2 * LENGTH];
+        putHex(out, 0, w1, 16);
+        putHex(out, 16, w2, 16);
+        putHex(out, 32, w3, 8);
+        return new String(out);
+    }
+
+    /** Return the 20 bytes of this id. **/
+    public byte[] toBytes() {
+        byte[] b = new byte[LENGTH];
+        copyTo(b, 0);
+        return b;
+    }
+
+    /** Write the 20 bytes of this id into b starting at offset. **/
+    void copyTo(byte[] b, int offset) {
+        for (int i = 0; i < 8; i++) {
+            b[offset + i] = (byte) (w1 >>> (56 - 8 * i));
+            b[offset + 8 + i] = (byte) (w2 >>> (56 - 8 * i));
+        }
+        for (int i = 0; i < 4; i++) {
+            b[offset + 16 + i] = (byte) (w3 >>> (24 - 8 * i));
+        }
+    }
+
+    @Override
+    public int compareTo(ObjectId o) {
+        int c = Long.compareUnsigned(w1, o.w1);
+        if (c == 0) {
+            c = Long.compareUnsigned(w2, o.w2);
+        }
+        if (c == 0) {
+            c = Integer.compareUnsigned(w3, o.w3);
+        }
+        return c;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId id = (ObjectId) o;
+        return w1 == id.w1 && w2 == id.w2 && w3 == id.w3;
+    }
+
+    /** The bytes of a SHA-1 are already uniformly distributed. **/
+    @Override
+    public int hashCode() {
+        return (int) (w1 >>> 32);
+    }
+
+    @Override
+    public String toString() {
+        return name();
+    }
+
+    /** Return the value of the n hex digits of s starting at start. **/
+    private static long hexLong(String s, int start, int n) {
+        long v = 0;
+        for (int i = start; i < start + n; i++) {
+            char c = s.charAt(i);
+            int d = c < DIGITS.length ? DIGITS[c] : -1;
+            if (d < 0) {
+                throw new IllegalArgumentException("not an object id: " + s);
+            }
+            v = (v << 4) | d;
+        }
+        return v;
+    }
+
+    /** Return the big-endian value of the n bytes of b starting at start. **/
+    private static long bytesLong(byte[] b, int start, int n) {
+        long v = 0;
+        for (int i = start; i < start + n; i++) {
+            v = (v << 8) | (b[i] & 0xff);
+        }
+        return v;
+    }
+
+    /** Write the low n hex digits of v into out starting at start. **/
+    private static void putHex(char[] out, int start, long v, int n) {
+        for (int i = start + n - 1; i >= start; i--) {
+            out[i] = HEX[(int) (v & 0xf)];
+            v >>>= 4;
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package gitlet;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import static gitlet.Utils.*;
+
+/** Moves objects between two gitlet repositories as one compressed stream.
+ *  The sender works out which objects the receiver lacks from the commits the
+ *  receiver wants and the commits it already has, then writes them, commits
+ *  last, as a sequence of (type, id, length, contents) records.
+ *  @author Vivek Singh
+ */
+public class Pack {
+    /** Marks the start of a pack stream **/
+    private static final String MAGIC = "GITLETPACK";
+    /** Version of the stream format **/
+    private static final int VERSION = 1;
+    /** Record type that ends the stream **/
+    private static final byte END = 0;
+    /** Largest object read accepts; a longer length field means a corrupt pack **/
+    private static final int MAX_OBJECT = 1 << 30;
+    /** Capacity of the queues between the stages of read **/
+    private static final int QUEUE_DEPTH = 16;
+    /** Size of the pipe between the sending and the receiving side of copy **/
+    private static final int PIPE_SIZE = 1 << 16;
+
+    /** Kinds of objects in a pack, with the name of the directory that stores them **/
+    enum Kind {
+        COMMIT("commits"), TREE("trees"), BLOB("blobs");
+
+        /** Name of the directory under objects **/
+        final String dirName;
+
+        Kind(String dirName) {
+            this.dirName = dirName;
+        }
+
+        /** Return the file of the object with the given id in the repository at gitletDir. **/
+        File file(File gitletDir, String id) {
+            return join(gitletDir, "objects", dirName, id);
+        }
+    }
+
+    /** An object to be sent **/
+    static class Entry {
+        final Kind kind;
+        final String id;
+
+        Entry(Kind kind, String id) {
+            this.kind = kind;
+            this.id = id;
+        }
+    }
+
+    /** Read the commit with the given id from the repository at gitletDir. **/
+    static gitlet.Commit readCommit(File gitletDir, String id) {
+        return readObject(Kind.COMMIT.file(gitletDir, id), gitlet.Commit.class);
+    }
+
+    /** Read the tree with the given id from the repository at gitletDir. **/
+    static gitlet.Tree readTree(File gitletDir, String id) {
+        return readObject(Kind.TREE.file(gitletDir, id), gitlet.Tree.class);
+    }
+
+    /** Return the given commits and all their ancestors in the repository at gitletDir,
+     * leaving out any commit that repository does not have. **/
+    static Set<gitlet.ObjectId> ancestors(File gitletDir, Collection<String> tips) {
+        Set<gitlet.ObjectId> seen = new HashSet<>();
+        Deque<String> stack = new ArrayDeque<>();
+        for (String tip : tips) {
+            if (tip != null && Kind.COMMIT.file(gitletDir, tip).exists()) {
+                stack.push(tip);
+            }
+        }
+        while (!stack.isEmpty()) {
+            String id = stack.pop();
+            if (!seen.add(gitlet.ObjectId.fromHex(id))) {
+                continue;
+            }
+            gitlet.Commit c = readCommit(gitletDir, id);
+            for (String p : new String[] {c.getParent(), c.getParent2()}) {
+                if (p != null && !seen.contains(gitlet.ObjectId.fromHex(p))) {
+                    stack.push(p);
+                }
+            }
+        }
+        return seen;
+    }
+
+    /** Negotiate the objects the sender at srcDir must send to a receiver that
+     * wants the given commits and already has the given commits. Commits reachable
+     * from a have are skipped, and so are trees and blobs of the boundary commits,
+     * which the receiver holds along with their history.
+     * @return the objects to send, each blob before its tree and every tree before the commits. **/
+    static List<Entry> negotiate(File srcDir, Collection<String> wants, Collection<String> haves) {
+        return negotiate(srcDir, wants, haves, new HashSet<>());
+    }
+
+    /** Negotiate as above, also adding to boundary the commits the receiver must
+     * already have for the objects to be complete. **/
+    static List<Entry> negotiate(File srcDir, Collection<String> wants, Collection<String> haves,
+                                 Set<String> boundary) {
+        Set<gitlet.ObjectId> common = ancestors(srcDir, haves);
+
+        List<String> commits = new ArrayList<>();
+        Set<gitlet.ObjectId> seen = new HashSet<>();
+        Deque<String> stack = new ArrayDeque<>();
+        for (String want : wants) {
+            stack.push(want);
+        }
+        while (!stack.isEmpty()) {
+            String id = stack.pop();
+            gitlet.ObjectId oid = gitlet.ObjectId.fromHex(id);
+            if (common.contains(oid)) {
+                boundary.add(id);
+                continue;
+            }
+            if (!seen.add(oid)) {
+                continue;
+            }
+            commits.add(id);
+            gitlet.Commit c = readCommit(srcDir, id);
+            for (String p : new String[] {c.getParent(), c.getParent2()}) {
+                if (p != null) {
+                    stack.push(p);
+                }
+            }
+        }
+
+        Set<gitlet.ObjectId> haveTrees = new HashSet<>();
+        Set<gitlet.ObjectId> haveBlobs = new HashSet<>();
+        for (String id : boundary) {
+            String tree = readCommit(srcDir, id).getTree();
+            if (tree != null && haveTrees.add(gitlet.ObjectId.fromHex(tree))) {
+                for (String blob : readTree(srcDir, tree).ids()) {
+                    haveBlobs.add(gitlet.ObjectId.fromHex(blob));
+                }
+            }
+        }
+
+        Map<gitlet.ObjectId, Entry> result = new LinkedHashMap<>();
+        for (String id : commits) {
+            String tree = readCommit(srcDir, id).getTree();
+            if (tree == null) {
+                continue;
+            }
+            gitlet.ObjectId treeID = gitlet.ObjectId.fromHex(tree);
+            if (haveTrees.contains(treeID) || result.containsKey(treeID)) {
+                continue;
+            }
+            for (String blob : readTree(srcDir, tree).ids()) {
+                gitlet.ObjectId blobID = gitlet.ObjectId.fromHex(blob);
+                if (!haveBlobs.contains(blobID) && !result.containsKey(blobID)) {
+                    result.put(blobID, new Entry(Kind.BLOB, blob));
+                }
+            }
+            result.put(treeID, new Entry(Kind.TREE, tree));
+        }
+        List<Entry> objects = new ArrayList<>(result.values());
+        /* Oldest commits last in the walk, send them first so that parents land before children. */
+        for (int i = commits.size() - 1; i >= 0; i--) {
+            objects.add(new Entry(Kind.COMMIT, commits.get(i)));
+        }
+        return objects;
+    }
+
+    /** Write the given objects of the repository at srcDir to out as one compressed stream. **/
+    static void write(File srcDir, List<Entry> objects, OutputStream out) throws IOException {
+        DeflaterOutputStream deflater = new DeflaterOutputStream(out, new Deflater(Deflater.BEST_SPEED));
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(deflater, 1 << 16));
+        data.writeUTF(MAGIC);
+        data.writeInt(VERSION);
+        for (Entry e : objects) {
+            byte[] contents = readContents(e.kind.file(srcDir, e.id));
+            data.writeByte(e.kind.ordinal() + 1);
+            data.writeUTF(e.id);
+            data.writeInt(contents.length);
+            data.write(contents);
+        }
+        data.writeByte(END);
+        data.flush();
+        deflater.finish();
+        out.flush();
+    }
+
+    /** Copy the given objects from the repository at src to the repository at dest.
+     * The sender writes the pack on its own thread into a pipe that the receiver
+     * reads, so the objects move as one stream.
+     * @return the ids of the commits dest received. **/
+    static List<String> copy(File src, File dest, List<Entry> objects) {
+        IOException[] failure = new IOException[1];
+        try (PipedInputStream in = new PipedInputStream(PIPE_SIZE)) {
+            PipedOutputStream out = new PipedOutputStream(in);
+            Thread sender = new Thread(() -> {
+                try (PipedOutputStream o = out) {
+                    write(src, objects, o);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            }, "gitlet-pack-sender");
+            sender.start();
+            List<String> received = read(in, dest);
+            sender.join();
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            return received;
+        } catch (IOException | InterruptedException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** A decoded object travelling between the stages of read **/
+    private static class Record {
+        final Kind kind;
+        final String id;
+        final byte[] contents;
+
+        Record(Kind kind, String id, byte[] contents) {
+            this.kind = kind;
+            this.id = id;
+            this.contents = contents;
+        }
+    }
+
+    /** Marks the end of the records passed between stages **/
+    private static final Record DONE = new Record(null, null, null);
+
+    /** Read a stream written by write and store every object it holds in the repository
+     * at destDir, checking that each one hashes to its id.
+     * Nothing is put in place unless the whole stream is good; a stream that ends
+     * early throws EOFException.
+     * Decompression runs on the calling thread, hashing and writing on a thread each,
+     * joined by bounded queues, so at most QUEUE_DEPTH objects per stage are in memory.
+     * @return the ids of the commits that were received. **/
+    static List<String> read(InputStream in, File destDir) throws IOException {
+        DataInputStream data = new DataInputStream(
+                new BufferedInputStream(new InflaterInputStream(in), 1 << 16));
+        if (!data.readUTF().equals(MAGIC) || data.readInt() != VERSION) {
+            throw error("Not a gitlet pack.");
+        }
+
+        BlockingQueue<Record> toHash = new ArrayBlockingQueue<>(QUEUE_DEPTH);
+        BlockingQueue<Record> toWrite = new ArrayBlockingQueue<>(QUEUE_DEPTH);
+        List<String> commits = new ArrayList<>();
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        Thread hasher = new Thread(() -> {
+            try {
+                Record r;
+                while ((r = toHash.take()) != DONE) {
+                    if (failure.get() == null && !sha1(r.contents).equals(r.id)) {
+                        failure.compareAndSet(null, error("Corrupt object %s in pack.", r.id));
+                    }
+                    toWrite.put(r);
+                }
+                toWrite.put(DONE);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "gitlet-pack-hasher");
+        Thread writer = new Thread(() -> {
+            try {
+                Record r;
+                while ((r = toWrite.take()) != DONE) {
+                    File f = r.kind.file(destDir, r.id);
+                    try {
+                        if (failure.get() == null) {
+                            gitlet.Durable.stage(f, r.contents);
+                        }
+                    } catch (RuntimeException e) {
+                        /* Keep draining the queue so the other stages can finish. */
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "gitlet-pack-writer");
+        hasher.start();
+        writer.start();
+
+        boolean truncated = false;
+        try {
+            try {
+                byte type;
+                while ((type = data.readByte()) != END) {
+                    if (type < 1 || type > Kind.values().length) {
+                        failure.compareAndSet(null, error("Corrupt pack: unknown object type %d.", type));
+                        break;
+                    }
+                    Kind kind = Kind.values()[type - 1];
+                    String id = data.readUTF();
+                    int length = data.readInt();
+                    if (length < 0 || length > MAX_OBJECT) {
+                        failure.compareAndSet(null, error("Corrupt pack: object length %d.", length));
+                        break;
+                    }
+                    /* Read in pieces, so a length beyond the end of the stream costs only
+                     * what is really there before it counts as truncated. */
+                    byte[] contents = data.readNBytes(length);
+                    if (contents.length < length) {
+                        throw new EOFException();
+                    }
+                    if (kind == Kind.COMMIT) {
+                        commits.add(id);
+                    }
+                    toHash.put(new Record(kind, id, contents));
+                }
+            } catch (EOFException e) {
+                /* Let the other stages finish what they have, then drop it all below. */
+                truncated = true;
+            }
+            toHash.put(DONE);
+            hasher.join();
+            writer.join();
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } finally {
+            if (hasher.isAlive() || writer.isAlive()) {
+                hasher.interrupt();
+                writer.interrupt();
+            }
+        }
+        if (truncated) {
+            gitlet.Durable.discard();
+            throw new EOFException("Truncated pack.");
+        }
+        if (failure.get() != null) {
+            gitlet.Durable.discard();
+            throw failure.get();
+        }
+        /* The objects go in place together, before the caller points any ref at them. */
+        gitlet.Durable.barrier();
+        return commits;
+    }
+}
@@ -0,0 +1,169 @@
+package gitlet;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/** Read-only form of a tree, and the form every tree is stored in.
+ *  The paths are kept in UTF-8 in one byte array, sorted and delimited by an
+ *  int array of offsets, and the blob ids as 20 raw bytes each in another
+ *  byte array, so a tree of a million files takes a few arrays instead of a
+ *  few million objects. Paths are found by binary search. They are sorted by
+ *  their UTF-8 bytes, which is the order of String.compareTo for all paths
+ *  without characters outside the Basic Multilingual Plane.
+ *  A tree read from disk stays in this form until something asks gitlet.Tree
+ *  for its mutable map.
+ *  @author Vivek Singh
+ */
+public final class PackedTree implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** The paths in UTF-8, one after another **/
+    private final byte[] paths;
+    /** Start of every path in paths, followed by the length of paths **/
+    private final int[] offsets;
+    /** The blob id of every path, 20 bytes each **/
+    private final byte[] ids;
+    /** Paths staged for removal, in String order **/
+    private final String[] removed;
+
+    private PackedTree(byte[] paths, int[] offsets, byte[] ids, String[] removed) {
+        this.paths = paths;
+        this.offsets = offsets;
+        this.ids = ids;
+        this.removed = removed;
+    }
+
+    /** Pack the files in map, from path to blob id, and the paths in removeSet. **/
+    static PackedTree of(Map<String, String> map, Set<String> removeSet) {
+        int n = map.size();
+        byte[][] encoded = new byte[n][];
+        String[] values = new String[n];
+        Integer[] order = new Integer[n];
+        int i = 0;
+        int total = 0;
+        for (Map.Entry<String, String> e : map.entrySet()) {
+            encoded[i] = e.getKey().getBytes(StandardCharsets.UTF_8);
+            values[i] = e.getValue();
+            order[i] = i;
+            total += encoded[i].length;
+            i++;
+        }
+        Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(encoded[a], encoded[b]));
+
+        byte[] paths = new byte[total];
+        int[] offsets = new int[n + 1];
+        byte[] ids = new byte[n * gitlet.ObjectId.LENGTH];
+        int pos = 0;
+        for (i = 0; i < n; i++) {
+            byte[] path = encoded[order[i]];
+            offsets[i] = pos;
+            System.arraycopy(path, 0, paths, pos, path.length);
+            pos += path.length;
+            gitlet.ObjectId.fromHex(values[order[i]]).copyTo(ids, i * gitlet.ObjectId.LENGTH);
+        }
+        offsets[n] = pos;
+        String[] removedPaths = removeSet.toArray(new String[0]);
+        Arrays.sort(removedPaths);
+        return new PackedTree(paths, offsets, ids, removedPaths);
+    }
+
+    /** Return the number of files. **/
+    int size() {
+        return offsets.length - 1;
+    }
+
+    /** Return the position of path, or -1 if it is not in this tree. **/
+    int find(String path) {
+        byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        int lo = 0;
+        int hi = size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = Arrays.compareUnsigned(paths, offsets[mid], offsets[mid + 1], key, 0, key.length);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the path at position i. **/
+    String path(int i) {
+        return new String(paths, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+    }
+
+    /** Return the blob id of the path at position i. **/
+    String id(int i) {
+        return gitlet.ObjectId.toHex(ids, i * gitlet.ObjectId.LENGTH);
+    }
+
+    /** Return the blob id of path, or null if it is not in this tree. **/
+    String get(String path) {
+        int i = find(path);
+        return i < 0 ? null : id(i);
+    }
+
+    /** Return whether path is staged for removal. **/
+    boolean isRemoved(String path) {
+        return Arrays.binarySearch(removed, path) >= 0;
+    }
+
+    /** Return the paths, decoded as they are read. **/
+    List<String> paths() {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int i) {
+                return path(i);
+            }
+
+            @Override
+            public int size() {
+                return PackedTree.this.size();
+            }
+        };
+    }
+
+    /** Return the blob ids in the order of the paths, encoded as they are read. **/
+    List<String> ids() {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int i) {
+                return id(i);
+            }
+
+            @Override
+            public int size() {
+                return PackedTree.this.size();
+            }
+        };
+    }
+
+    /** Return the paths staged for removal. **/
+    List<String> removed() {
+        return Collections.unmodifiableList(Arrays.asList(removed));
+    }
+
+    /** Return the files as a new mutable map from path to blob id. **/
+    TreeMap<String, String> toMap() {
+        TreeMap<String, String> map = new TreeMap<>();
+        for (int i = 0; i < size(); i++) {
+            map.put(path(i), id(i));
+        }
+        return map;
+    }
+
+    /** A packed tree is read back as a gitlet.Tree. **/
+    private Object readResolve() {
+        return new gitlet.Tree(this);
+    }
+}
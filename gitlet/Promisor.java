@@ -0,0 +1,142 @@
+package gitlet;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** Partial clones and the promisor repository they fetch blobs from.
+ *  A partial clone holds every commit and tree but only the blobs it has needed
+ *  so far. Any other blob is promised by the repository it was cloned from, whose
+ *  .gitlet directory is recorded in the promisor file. Commands that are about to
+ *  read many blobs ask for all of them at once, so they arrive in a single pack.
+ *  @author Vivek Singh
+ */
+public class Promisor {
+    /** File that stores the .gitlet directory of the promisor repository **/
+    static final File PROMISOR = join(GITLET_DIR, "promisor");
+
+    /** Check if this repository is a partial clone **/
+    public static boolean isPartial() {
+        return PROMISOR.exists();
+    }
+
+    /** Check if this is a partial clone whose promisor repository still holds the blob. **/
+    public static boolean promises(String blobID) {
+        if (!isPartial()) {
+            return false;
+        }
+        File dir = new File(readContentsAsString(PROMISOR));
+        return gitlet.Pack.Kind.BLOB.file(dir, blobID).exists();
+    }
+
+    /** Return the .gitlet directory of the promisor repository. **/
+    private static File promisorDir() {
+        File dir = new File(readContentsAsString(PROMISOR));
+        if (!dir.isDirectory()) {
+            throw error("Promisor repository not found.");
+        }
+        return dir;
+    }
+
+    /** Make sure all the given blobs are present, fetching the missing ones from the
+     * promisor repository in one batch. Does nothing outside a partial clone. **/
+    public static void fetchBlobs(Collection<String> blobIDs) {
+        if (!isPartial()) {
+            return;
+        }
+        Set<String> missing = new LinkedHashSet<>();
+        for (String id : blobIDs) {
+            if (!join(BLOB_DIR, id).exists()) {
+                missing.add(id);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        List<gitlet.Pack.Entry> objects = new ArrayList<>();
+        for (String id : missing) {
+            objects.add(new gitlet.Pack.Entry(gitlet.Pack.Kind.BLOB, id));
+        }
+        gitlet.Pack.copy(promisorDir(), GITLET_DIR, objects);
+    }
+
+    /** Fetch the blobs of every entry that is about to be sent from this repository. **/
+    static void fetchMissing(List<gitlet.Pack.Entry> objects) {
+        List<String> blobs = new ArrayList<>();
+        for (gitlet.Pack.Entry e : objects) {
+            if (e.kind == gitlet.Pack.Kind.BLOB) {
+                blobs.add(e.id);
+            }
+        }
+        fetchBlobs(blobs);
+    }
+
+    /** Fetch every blob of the tree of the given branch, or of HEAD if branch is null. **/
+    public static void prefetch(String branch) {
+        if (!isPartial()) {
+            throw error("Not a partial clone.");
+        }
+        String commitID = branch == null ? getLatestIDInHEAD() : REFS.read(branch);
+        if (commitID == null) {
+            throw error("No such branch exists.");
+        }
+        gitlet.Tree t = gitlet.Commit.getLatestCommitTreeObj(commitID);
+        if (t != null) {
+            fetchBlobs(t.ids());
+        }
+    }
+
+    /** Clone the repository whose .gitlet directory is at dir into the current directory.
+     * Every branch is copied under its own name and the active branch of the source is
+     * checked out. A partial clone copies commits and trees only and records dir as
+     * its promisor. **/
+    public static void cloneFrom(String dir, boolean partial) {
+        File src = new File(dir.replace("/", File.separator)).getAbsoluteFile().toPath().normalize().toFile();
+        if (!join(src, "objects").isDirectory()) {
+            throw error("Remote directory not found.");
+        }
+        setupGitlet();
+        if (partial) {
+            writeContents(PROMISOR, src.getPath());
+        }
+
+        gitlet.RefStore srcRefs = new gitlet.RefStore(src);
+        List<String> names = srcRefs.names();
+        List<String> tips = new ArrayList<>();
+        for (String name : names) {
+            tips.add(srcRefs.read(name));
+        }
+        List<gitlet.Pack.Entry> objects = gitlet.Pack.negotiate(src, tips, List.of(getLatestIDInHEAD()));
+        if (partial) {
+            objects.removeIf(e -> e.kind == gitlet.Pack.Kind.BLOB);
+        }
+        List<String> received = gitlet.Pack.copy(src, GITLET_DIR, objects);
+        gitlet.MessageIndex.indexCommits(GITLET_DIR, received);
+
+        gitlet.RefStore.Transaction t = REFS.transaction();
+        gitlet.RefLog.Batch log = REFLOG.batch();
+        for (int i = 0; i < names.size(); i++) {
+            t.update(names.get(i), tips.get(i));
+            log.add(names.get(i), REFS.read(names.get(i)), tips.get(i), "clone: from " + src.getPath());
+        }
+        t.commit();
+        log.write();
+
+        String active = readContentsAsString(join(src, "HEAD"));
+        if (REFS.exists(active)) {
+            writeContents(HEAD, active);
+        }
+        gitlet.Tree tree = gitlet.Commit.getLatestCommitTreeObj(getLatestIDInHEAD());
+        if (tree != null) {
+            fetchBlobs(tree.ids());
+            for (String file : tree.paths()) {
+                createFileWithContents(join(CWD, file), blobFile(tree.get(file)));
+            }
+        }
+    }
+}
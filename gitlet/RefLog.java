@@ -0,0 +1,200 @@
+package gitlet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static gitlet.Utils.*;
+
+/** Append-only history of the values every ref and HEAD pointed to.
+ *  Each ref has its own log made of fixed-width records, so the n-th most recent
+ *  entry sits at a known offset and is read without scanning the file.
+ *  A record holds the old and new commit ids as raw 20-byte hashes, the time
+ *  in milliseconds and a zero padded UTF-8 message.
+ *  @author Vivek Singh
+ */
+public class RefLog {
+    /** Name of the log that records every move of HEAD **/
+    static final String HEAD_LOG = "HEAD";
+    /** Bytes in a raw SHA-1 hash **/
+    private static final int ID_BYTES = gitlet.ObjectId.LENGTH;
+    /** Bytes reserved for the message of a record **/
+    private static final int MSG_BYTES = 80;
+    /** Bytes in a complete record **/
+    static final int RECORD_SIZE = 2 * ID_BYTES + Long.BYTES + MSG_BYTES;
+
+    /** Directory that holds all the logs **/
+    private final File logsDir;
+
+    /** Create the reflog of the repository whose .gitlet directory is gitletDir. **/
+    RefLog(File gitletDir) {
+        this.logsDir = join(gitletDir, "logs");
+    }
+
+    /** One entry of a reflog. **/
+    public static class Entry {
+        /** Commit the ref pointed to before the update, null if it was created **/
+        public final String oldID;
+        /** Commit the ref points to after the update **/
+        public final String newID;
+        /** When the update happened, in milliseconds since the epoch **/
+        public final long time;
+        /** Why the ref was updated **/
+        public final String message;
+
+        Entry(String oldID, String newID, long time, String message) {
+            this.oldID = oldID;
+            this.newID = newID;
+            this.time = time;
+            this.message = message;
+        }
+    }
+
+    /** Return the log file of the named ref. **/
+    private File logFile(String ref) {
+        if (ref.equals(HEAD_LOG)) {
+            return join(logsDir, HEAD_LOG);
+        }
+        return join(logsDir, "refs", "heads", ref);
+    }
+
+    /** Start a batch of appends that is written with one write per log file. **/
+    public Batch batch() {
+        return new Batch();
+    }
+
+    /** Return the number of entries in the log of the named ref. **/
+    public int count(String ref) {
+        return (int) (logFile(ref).length() / RECORD_SIZE);
+    }
+
+    /** Return the n-th most recent entry of the named ref, 0 being the latest one,
+     * or null if the log has fewer entries. **/
+    public Entry entry(String ref, int n) {
+        int count = count(ref);
+        if (n < 0 || n >= count) {
+            return null;
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        try (FileChannel ch = FileChannel.open(logFile(ref).toPath(), StandardOpenOption.READ)) {
+            ch.read(record, (long) (count - 1 - n) * RECORD_SIZE);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        record.flip();
+        return decode(record);
+    }
+
+    /** Return all entries of the named ref, the latest first. **/
+    public List<Entry> entries(String ref) {
+        List<Entry> result = new ArrayList<>();
+        File f = logFile(ref);
+        if (!f.exists()) {
+            return result;
+        }
+        int count = count(ref);
+        try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, (long) count * RECORD_SIZE);
+            for (int i = count - 1; i >= 0; i--) {
+                map.position(i * RECORD_SIZE);
+                result.add(decode(map));
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        return result;
+    }
+
+    /** Delete the log of the named ref. **/
+    public void delete(String ref) {
+        logFile(ref).delete();
+    }
+
+    /** Decode the record at the buffer's position. **/
+    private static Entry decode(ByteBuffer buf) {
+        byte[] ids = new byte[2 * ID_BYTES];
+        byte[] msg = new byte[MSG_BYTES];
+        buf.get(ids);
+        long time = buf.getLong();
+        buf.get(msg);
+        int len = 0;
+        while (len < MSG_BYTES && msg[len] != 0) {
+            len++;
+        }
+        String old = isZero(ids, 0) ? null : gitlet.ObjectId.toHex(ids, 0);
+        return new Entry(old, gitlet.ObjectId.toHex(ids, ID_BYTES), time, new String(msg, 0, len, StandardCharsets.UTF_8));
+    }
+
+    /** Encode one record. **/
+    private static byte[] encode(String oldID, String newID, long time, String message) {
+        ByteBuffer buf = ByteBuffer.allocate(RECORD_SIZE);
+        if (oldID != null) {
+            gitlet.ObjectId.fromHex(oldID).copyTo(buf.array(), 0);
+        }
+        gitlet.ObjectId.fromHex(newID).copyTo(buf.array(), ID_BYTES);
+        buf.position(2 * ID_BYTES);
+        buf.putLong(time);
+        byte[] msg = message.getBytes(StandardCharsets.UTF_8);
+        int len = Math.min(msg.length, MSG_BYTES);
+        /* Do not cut a multi-byte character in half. */
+        while (len < msg.length && len > 0 && (msg[len] & 0xc0) == 0x80) {
+            len--;
+        }
+        buf.put(msg, 0, len);
+        return buf.array();
+    }
+
+    /** Check if every byte of the id at offset in b is zero. **/
+    private static boolean isZero(byte[] b, int offset) {
+        for (int i = offset; i < offset + ID_BYTES; i++) {
+            if (b[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Appends to one or more logs that are written together. Records for the
+     * same log are concatenated and written with a single append, and nothing
+     * is forced to disk, so logging adds no sync barrier to a command. **/
+    public class Batch {
+        /** Pending records per log file **/
+        private final Map<File, List<byte[]>> pending = new LinkedHashMap<>();
+
+        /** Record that the named ref moved from oldID to newID. **/
+        public Batch add(String ref, String oldID, String newID, String message) {
+            pending.computeIfAbsent(logFile(ref), k -> new ArrayList<>())
+                    .add(encode(oldID, newID, System.currentTimeMillis(), message));
+            return this;
+        }
+
+        /** Append all pending records. **/
+        public void write() {
+            for (Map.Entry<File, List<byte[]>> e : pending.entrySet()) {
+                File f = e.getKey();
+                f.getParentFile().mkdirs();
+                ByteBuffer buf = ByteBuffer.allocate(e.getValue().size() * RECORD_SIZE);
+                for (byte[] record : e.getValue()) {
+                    buf.put(record);
+                }
+                buf.flip();
+                try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                    while (buf.hasRemaining()) {
+                        ch.write(buf);
+                    }
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+            pending.clear();
+        }
+    }
+}
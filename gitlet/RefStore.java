@@ -0,0 +1,287 @@
+package gitlet;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/** Branch references of one gitlet repository.
+ *  Most refs live in a single packed-refs file holding one "ID NAME" line per
+ *  ref, sorted by name so that a single ref can be found by binary search.
+ *  A loose file under refs/heads overrides the packed value of the same name;
+ *  loose files are what ordinary commits write, since rewriting the packed file
+ *  for every commit would cost time proportional to the number of branches.
+ *  Writers take the lock file of every ref they change, and of packed-refs, and
+ *  install new values by renaming, so readers never wait and never see a torn ref.
+ *  @author Vivek Singh
+ */
+public class RefStore {
+    /** Directory of loose refs **/
+    private final File headsDir;
+    /** File of packed refs **/
+    private final File packedRefs;
+
+    /** Create the ref store of the repository whose .gitlet directory is gitletDir. **/
+    RefStore(File gitletDir) {
+        this.headsDir = join(gitletDir, "refs", "heads");
+        this.packedRefs = join(gitletDir, "packed-refs");
+    }
+
+    /** Return the commit id the named ref points to, or null if there is no such ref. **/
+    public String read(String name) {
+        File loose = join(headsDir, name);
+        if (loose.isFile()) {
+            return readContentsAsString(loose);
+        }
+        if (!packedRefs.exists()) {
+            return null;
+        }
+        return findPacked(readContents(packedRefs), name);
+    }
+
+    /** Check if the named ref exists. **/
+    public boolean exists(String name) {
+        return read(name) != null;
+    }
+
+    /** Return the names of all refs in lexicographic order. **/
+    public List<String> names() {
+        TreeSet<String> names = new TreeSet<>(readPacked().keySet());
+        collectLoose(headsDir, "", names);
+        return new ArrayList<>(names);
+    }
+
+    /** Point the named ref at the commit id through its loose file. **/
+    public void writeLoose(String name, String id) {
+        gitlet.LockFile lock = lockLoose(name);
+        lock.write(id);
+        lock.commit();
+    }
+
+    /** Point the named ref at the commit id, but only if it still points at
+     * expected, which is null for a ref that must not exist yet. The check and
+     * the write happen under the lock of the ref, so of two commands that move
+     * the same ref from the same value only one succeeds.
+     * @return false if the ref had moved. **/
+    public boolean compareAndSwap(String name, String expected, String id) {
+        gitlet.LockFile lock = lockLoose(name);
+        if (!Objects.equals(read(name), expected)) {
+            lock.rollback();
+            return false;
+        }
+        lock.write(id);
+        lock.commit();
+        return true;
+    }
+
+    /** Check if name can name a ref: it must stay below refs/heads and fit on one
+     * line of packed-refs, so it is not empty, does not start with / and contains
+     * no .., newline or NUL. **/
+    public static boolean isValidName(String name) {
+        return !name.isEmpty() && !name.startsWith("/") && !name.contains("..")
+                && name.indexOf('\n') < 0 && name.indexOf('\0') < 0;
+    }
+
+    /** Take the lock of the loose file of the named ref, which must be a valid name. **/
+    private gitlet.LockFile lockLoose(String name) {
+        if (!isValidName(name)) {
+            throw error("Invalid ref name: %s", name);
+        }
+        File loose = join(headsDir, name);
+        loose.getParentFile().mkdirs();
+        return gitlet.LockFile.acquire(loose);
+    }
+
+    /** Start a transaction that changes many refs at once. **/
+    public Transaction transaction() {
+        return new Transaction();
+    }
+
+    /** Move every loose ref into the packed file. **/
+    public void packAll() {
+        gitlet.LockFile lock = gitlet.LockFile.acquire(packedRefs);
+        foldLoose();
+        lock.rollback();
+    }
+
+    /** Move every loose ref into the packed file, holding the packed-refs lock.
+     * Each loose ref is locked while it moves, so a concurrent update of it is
+     * neither lost nor overwritten by its packed value. **/
+    private void foldLoose() {
+        List<String> loose = new ArrayList<>();
+        collectLoose(headsDir, "", loose);
+        if (loose.isEmpty()) {
+            return;
+        }
+        List<gitlet.LockFile> taken = new ArrayList<>();
+        for (String name : loose) {
+            if (gitlet.LockFile.heldOn(join(headsDir, name)) == null) {
+                taken.add(lockLoose(name));
+            }
+        }
+        TreeMap<String, String> packed = readPacked();
+        for (String name : loose) {
+            File f = join(headsDir, name);
+            if (f.isFile()) {
+                packed.put(name, readContentsAsString(f));
+            }
+        }
+        writePacked(packed);
+        /* The packed file now holds the same values, so dropping the loose files changes nothing. */
+        for (String name : loose) {
+            join(headsDir, name).delete();
+        }
+        for (gitlet.LockFile l : taken) {
+            l.rollback();
+        }
+    }
+
+    /** Binary search the sorted packed-refs contents for the named ref. **/
+    private static String findPacked(byte[] contents, String name) {
+        int lo = 0;
+        int hi = contents.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int start = mid;
+            while (start > lo && contents[start - 1] != '\n') {
+                start--;
+            }
+            int end = start;
+            while (end < contents.length && contents[end] != '\n') {
+                end++;
+            }
+            String line = new String(contents, start, end - start, StandardCharsets.UTF_8);
+            int cmp = line.substring(UID_LENGTH + 1).compareTo(name);
+            if (cmp == 0) {
+                return line.substring(0, UID_LENGTH);
+            } else if (cmp < 0) {
+                lo = end + 1;
+            } else {
+                hi = start;
+            }
+        }
+        return null;
+    }
+
+    /** Return all packed refs as a sorted map from name to commit id. **/
+    private TreeMap<String, String> readPacked() {
+        TreeMap<String, String> packed = new TreeMap<>();
+        if (!packedRefs.exists()) {
+            return packed;
+        }
+        for (String line : readContentsAsString(packedRefs).split("\n")) {
+            if (line.length() > UID_LENGTH) {
+                packed.put(line.substring(UID_LENGTH + 1), line.substring(0, UID_LENGTH));
+            }
+        }
+        return packed;
+    }
+
+    /** Replace the packed file with the given refs: write a temporary file,
+     * flush it to disk once and rename it over the old file.
+     * The caller must hold the packed-refs lock. **/
+    private void writePacked(TreeMap<String, String> refs) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> e : refs.entrySet()) {
+            sb.append(e.getValue()).append(' ').append(e.getKey()).append('\n');
+        }
+        File tmp = new File(packedRefs.getPath() + ".tmp");
+        writeContents(tmp, sb.toString());
+        gitlet.Durable.force(tmp);
+        gitlet.Durable.rename(tmp, packedRefs);
+        gitlet.Durable.force(packedRefs.getParentFile());
+    }
+
+    /** Add the names of the loose refs below dir, prefixed by prefix, to names. **/
+    private static void collectLoose(File dir, String prefix, Collection<String> names) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            if (f.isDirectory()) {
+                collectLoose(f, prefix + f.getName() + "/", names);
+            } else if (!f.getName().endsWith(".lock")) {
+                names.add(prefix + f.getName());
+            }
+        }
+    }
+
+    /** A batch of ref creations, updates and deletions that is applied all at once.
+     * Nothing changes on disk until commit, which checks every change first and then
+     * installs them all with a single rename of the packed file. Loose files of the
+     * changed refs are removed right after; loose files of other refs are left alone. **/
+    public class Transaction {
+        /** Pending changes, a null value deletes the ref **/
+        private final TreeMap<String, String> changes = new TreeMap<>();
+        /** Names of refs that must not exist yet **/
+        private final TreeSet<String> creates = new TreeSet<>();
+
+        /** Create the named ref, which must not exist yet. **/
+        public Transaction create(String name, String id) {
+            creates.add(name);
+            changes.put(name, id);
+            return this;
+        }
+
+        /** Point the named ref at a new commit id, creating it if needed. **/
+        public Transaction update(String name, String id) {
+            changes.put(name, id);
+            return this;
+        }
+
+        /** Delete the named ref. **/
+        public Transaction delete(String name) {
+            changes.put(name, null);
+            return this;
+        }
+
+        /** Apply all the changes, or none of them if a created ref already exists.
+         * The packed-refs lock and the lock of every changed ref are held from the
+         * checks to the final rename, always taken in that order.
+         * @return false if the transaction was rejected. **/
+        public boolean commit() {
+            if (changes.isEmpty()) {
+                return true;
+            }
+            gitlet.LockFile packedLock = gitlet.LockFile.acquire(packedRefs);
+            List<gitlet.LockFile> locks = new ArrayList<>();
+            for (String name : changes.keySet()) {
+                locks.add(lockLoose(name));
+            }
+            try {
+                for (String name : creates) {
+                    if (exists(name)) {
+                        return false;
+                    }
+                }
+                TreeMap<String, String> packed = readPacked();
+                for (Map.Entry<String, String> e : changes.entrySet()) {
+                    if (e.getValue() == null) {
+                        packed.remove(e.getKey());
+                    } else {
+                        packed.put(e.getKey(), e.getValue());
+                    }
+                }
+                writePacked(packed);
+                /* A loose file would override the new packed value. Its lock is held, so
+                 * no update of it can come in between and be lost. */
+                for (String name : changes.keySet()) {
+                    join(headsDir, name).delete();
+                }
+                return true;
+            } finally {
+                for (gitlet.LockFile l : locks) {
+                    l.rollback();
+                }
+                packedLock.rollback();
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package gitlet;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** Remote repositories on the local file system or served by gitlet.Server
+ *  over HTTP, and the commands that exchange commits with them. HTTP remotes
+ *  can be fetched and pulled from, not pushed to.
+ *  @author Vivek Singh
+ */
+public class Remote {
+    /** File that stores the remote names and their .gitlet directories **/
+    static final File REMOTES = join(GITLET_DIR, "remotes");
+
+    /** Return the configured remotes. **/
+    @SuppressWarnings("unchecked")
+    static TreeMap<String, String> readRemotes() {
+        if (!REMOTES.exists()) {
+            return new TreeMap<>();
+        }
+        return readObject(REMOTES, TreeMap.class);
+    }
+
+    /** Remember the remote with the given name, whose .gitlet directory is at dir.
+     * Forward slashes in dir are turned into the separator of this system. **/
+    public static void addRemote(String name, String dir) {
+        TreeMap<String, String> remotes = readRemotes();
+        if (remotes.containsKey(name)) {
+            throw error("A remote with that name already exists.");
+        }
+        remotes.put(name, isUrl(dir) ? dir : dir.replace("/", File.separator));
+        writeObject(REMOTES, remotes);
+    }
+
+    /** Forget the remote with the given name. **/
+    public static void removeRemote(String name) {
+        TreeMap<String, String> remotes = readRemotes();
+        if (remotes.remove(name) == null) {
+            throw error("A remote with that name does not exist.");
+        }
+        writeObject(REMOTES, remotes);
+    }
+
+    /** Check if the remote location is the URL of a repository served over HTTP. **/
+    private static boolean isUrl(String location) {
+        return location.startsWith("http://") || location.startsWith("https://");
+    }
+
+    /** Return the .gitlet directory of the named remote, or exit if it cannot be found. **/
+    static File remoteDir(String name) {
+        String dir = readRemotes().get(name);
+        if (dir == null || !new File(dir).isDirectory()) {
+            throw error("Remote directory not found.");
+        }
+        return new File(dir);
+    }
+
+    /** Return the tips of every branch in the given ref store. **/
+    private static List<String> tips(gitlet.RefStore refs) {
+        List<String> tips = new ArrayList<>();
+        for (String name : refs.names()) {
+            tips.add(refs.read(name));
+        }
+        return tips;
+    }
+
+    /** Copy the history of the given branch of the remote into the branch
+     * remote/branch of this repository. */
+    public static void fetch(String remote, String branch) {
+        String location = readRemotes().get(remote);
+        String want;
+        if (location != null && isUrl(location)) {
+            want = fetchOverHttp(location, branch, tips(REFS));
+        } else {
+            File src = remoteDir(remote);
+            want = new gitlet.RefStore(src).read(branch);
+            if (want != null) {
+                List<String> received = transfer(src, GITLET_DIR, want, tips(REFS));
+                gitlet.MessageIndex.indexCommits(GITLET_DIR, received);
+            }
+        }
+        if (want == null) {
+            throw error("That remote does not have that branch.");
+        }
+
+        String local = remote + "/" + branch;
+        String oldID = REFS.read(local);
+        if (!REFS.compareAndSwap(local, oldID, want)) {
+            gitlet.LockFile.fail("Branch " + local + " was moved by another command; try again.");
+        }
+        REFLOG.batch().add(local, oldID, want, "fetch: " + remote + " " + branch).write();
+    }
+
+    /** Fetch the given branch of the repository served at url into this repository,
+     * sending the given commits as the ones it already has.
+     * @return the commit the branch points to, or null if the server has no such branch. **/
+    private static String fetchOverHttp(String url, String branch, List<String> haves) {
+        try {
+            String want = null;
+            for (String line : new String(httpGet(url + "/refs"), StandardCharsets.UTF_8).split("\n")) {
+                if (line.length() > UID_LENGTH && line.substring(UID_LENGTH + 1).equals(branch)) {
+                    want = line.substring(0, UID_LENGTH);
+                }
+            }
+            if (want == null) {
+                return null;
+            }
+            StringBuilder body = new StringBuilder("want " + want + "\n");
+            for (String have : haves) {
+                body.append("have ").append(have).append('\n');
+            }
+            HttpURLConnection c = (HttpURLConnection) URI.create(url + "/pack").toURL().openConnection();
+            c.setRequestMethod("POST");
+            c.setDoOutput(true);
+            try (OutputStream out = c.getOutputStream()) {
+                out.write(body.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            if (c.getResponseCode() != 200 && c.getResponseCode() != 206) {
+                throw new IOException("server answered " + c.getResponseCode());
+            }
+            try (InputStream in = c.getInputStream()) {
+                gitlet.MessageIndex.indexCommits(GITLET_DIR, gitlet.Pack.read(in, GITLET_DIR));
+            }
+            return want;
+        } catch (IOException e) {
+            throw error("Cannot fetch from %s: %s", url, e.getMessage());
+        }
+    }
+
+    /** Return the body of a GET of url. **/
+    private static byte[] httpGet(String url) throws IOException {
+        HttpURLConnection c = (HttpURLConnection) URI.create(url).toURL().openConnection();
+        if (c.getResponseCode() != 200) {
+            throw new IOException("server answered " + c.getResponseCode());
+        }
+        try (InputStream in = c.getInputStream()) {
+            return in.readAllBytes();
+        }
+    }
+
+    /** Append the commits of the current branch to the given branch of the remote.
+     * The remote branch must be an ancestor of the current branch, and must not be
+     * the branch checked out in the remote, whose working directory would go stale. */
+    public static void push(String remote, String branch) {
+        String location = readRemotes().get(remote);
+        if (location != null && isUrl(location)) {
+            throw error("Cannot push to a remote served over HTTP.");
+        }
+        File dest = remoteDir(remote);
+        if (branch.equals(readContentsAsString(join(dest, "HEAD")))) {
+            throw error("Cannot push to the branch checked out in the remote.");
+        }
+        gitlet.RefStore remoteRefs = new gitlet.RefStore(dest);
+        String head = getLatestIDInHEAD();
+        String remoteHead = remoteRefs.read(branch);
+        if (remoteHead != null && !gitlet.Pack.ancestors(GITLET_DIR, List.of(head))
+                .contains(gitlet.ObjectId.fromHex(remoteHead))) {
+            throw error("Please pull down remote changes before pushing.");
+        }
+
+        List<String> received = transfer(GITLET_DIR, dest, head, tips(remoteRefs));
+        gitlet.MessageIndex.indexCommits(dest, received);
+
+        /* Another push may have moved the branch since it was read. */
+        if (!remoteRefs.compareAndSwap(branch, remoteHead, head)) {
+            gitlet.LockFile.fail("Please pull down remote changes before pushing.");
+        }
+        new gitlet.RefLog(dest).batch()
+                .add(branch, remoteHead, head, "push: from " + CWD.getPath())
+                .write();
+    }
+
+    /** Fetch the given branch of the remote and merge it into the current branch.
+     * If the current branch is an ancestor of the fetched one, the current branch is
+     * moved to it as reset does, and HEAD stays on it. */
+    public static void pull(String remote, String branch) {
+        fetch(remote, branch);
+        String tracking = remote + "/" + branch;
+        String current = getActiveBranch();
+        String head = REFS.read(current);
+        String fetched = REFS.read(tracking);
+        if (head.equals(fetched) || !gitlet.Pack.ancestors(GITLET_DIR, List.of(fetched))
+                .contains(gitlet.ObjectId.fromHex(head))) {
+            mergeBranch(tracking);
+            return;
+        }
+        if (newFilesTracked()) {
+            throw error("You have uncommitted changes.");
+        }
+        if (anyUntrackedFiles()) {
+            throw error("There is an untracked file in the way; delete it, or add and commit it first.");
+        }
+        if (!REFS.compareAndSwap(current, head, fetched)) {
+            gitlet.LockFile.fail("Branch " + current + " was moved by another command; try again.");
+        }
+        String reason = "pull: fast-forward to " + tracking;
+        REFLOG.batch()
+                .add(current, head, fetched, reason)
+                .add(gitlet.RefLog.HEAD_LOG, head, fetched, reason)
+                .write();
+        updateWorkingFiles(gitlet.Commit.treeOf(head), gitlet.Commit.treeOf(fetched));
+        System.out.println("Current branch fast-forwarded.");
+    }
+
+    /** Send everything the repository at dest needs to have the commit want, given
+     * that it already has the commits in haves.
+     * @return the ids of the commits dest received. **/
+    private static List<String> transfer(File src, File dest, String want, List<String> haves) {
+        List<gitlet.Pack.Entry> objects = gitlet.Pack.negotiate(src, List.of(want), haves);
+        if (src.equals(GITLET_DIR)) {
+            gitlet.Promisor.fetchMissing(objects);
+        }
+        return gitlet.Pack.copy(src, dest, objects);
+    }
+}
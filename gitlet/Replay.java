@@ -0,0 +1,157 @@
+package gitlet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static gitlet.Commit.getCommitObj;
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** Cherry-pick and rebase.
+ *  Both replay commits onto another commit. Each commit is replayed against
+ *  trees only: the files it changed from its first parent are applied to the
+ *  tree being built, which is kept in memory from one commit to the next, and
+ *  only the new tree and commit are written. A file that the commit changed
+ *  and that also differs in the tree being built is a conflict, and nothing is
+ *  changed at all. The working directory is brought from the old commit to
+ *  the new one once, at the end, writing only the files that differ.
+ *  @author Vivek Singh
+ */
+public class Replay {
+
+    /** Apply the changes of the commit onto the current commit as a new commit. **/
+    public static void cherryPick(String commitID) {
+        checkClean();
+        String headID = getLatestIDInHEAD();
+        gitlet.Tree ours = copyOf(headID);
+        gitlet.Commit c = getCommitObj(commitID, COMMIT_DIR);
+        Set<String> changed = apply(commitID, c, ours);
+        if (changed.isEmpty()) {
+            throw error("No changes added to the commit.");
+        }
+        String newID = gitlet.Commit.stageCommit(c.getMsg(), headID, null, new Date(), ours);
+        finish(headID, newID, ours, "cherry-pick: " + c.getMsg());
+        indexCommit(newID, c.getMsg(), changed);
+    }
+
+    /** Replay the commits of the current branch that the given branch does not
+     * have onto the head of that branch, and move the current branch to the last
+     * of them. Commits whose changes the branch already has are dropped. **/
+    public static void rebase(String branch) {
+        if (!branchExists(branch)) {
+            throw error("A branch with that name does not exist.");
+        }
+        if (isCurrentBranch(branch)) {
+            throw error("Cannot rebase a branch onto itself.");
+        }
+        checkClean();
+        String headID = getLatestIDInHEAD();
+        String upstream = latestCommitIn(branch);
+        Set<gitlet.ObjectId> upstreamHas = gitlet.Pack.ancestors(GITLET_DIR, List.of(upstream));
+
+        List<String> todo = new ArrayList<>();
+        String id = headID;
+        while (id != null && !upstreamHas.contains(gitlet.ObjectId.fromHex(id))) {
+            todo.add(id);
+            id = getCommitObj(id, COMMIT_DIR).getParent();
+        }
+        if (upstream.equals(id)) {
+            throw error("Current branch is up to date.");
+        }
+        Collections.reverse(todo);
+
+        gitlet.Tree ours = copyOf(upstream);
+        String tip = upstream;
+        List<String> newIDs = new ArrayList<>();
+        List<gitlet.Commit> sources = new ArrayList<>();
+        List<Set<String>> changes = new ArrayList<>();
+        for (String commitID : todo) {
+            gitlet.Commit c = getCommitObj(commitID, COMMIT_DIR);
+            Set<String> changed = apply(commitID, c, ours);
+            if (changed.isEmpty()) {
+                continue;
+            }
+            tip = gitlet.Commit.stageCommit(c.getMsg(), tip, null, c.getDate(), ours);
+            newIDs.add(tip);
+            sources.add(c);
+            changes.add(changed);
+        }
+        finish(headID, tip, ours, "rebase: onto " + branch);
+        for (int i = 0; i < newIDs.size(); i++) {
+            indexCommit(newIDs.get(i), sources.get(i).getMsg(), changes.get(i));
+        }
+    }
+
+    /** Refuse to replay with staged changes or untracked files in the way. **/
+    private static void checkClean() {
+        if (newFilesTracked()) {
+            throw error("You have uncommitted changes.");
+        }
+        if (anyUntrackedFiles()) {
+            throw error("There is an untracked file in the way; delete it, or add and commit it first.");
+        }
+    }
+
+    /** Apply the files that the commit c with the given id changed from its first
+     * parent to ours, and return them, leaving out those ours already has.
+     * Ends the command, without changing anything, on a conflict. **/
+    private static Set<String> apply(String commitID, gitlet.Commit c, gitlet.Tree ours) {
+        gitlet.Tree base = c.getParent() == null
+                ? gitlet.Tree.createTree() : gitlet.Commit.treeOf(c.getParent());
+        gitlet.Tree theirs = gitlet.Commit.treeOf(commitID);
+        Set<String> changed = new TreeSet<>();
+        for (String file : gitlet.Tree.changedPaths(base, theirs)) {
+            String target = theirs.get(file);
+            String current = ours.get(file);
+            if (Objects.equals(current, target)) {
+                continue;
+            }
+            if (!Objects.equals(current, base.get(file))) {
+                gitlet.Durable.discard();
+                throw error("Could not apply %s (%s): %s was changed on both sides.",
+                        commitID.substring(0, 7), c.getMsg(), file);
+            }
+            if (target == null) {
+                ours.getMap().remove(file);
+            } else {
+                ours.getMap().put(file, target);
+            }
+            changed.add(file);
+        }
+        return changed;
+    }
+
+    /** Move the current branch from oldID to newID, whose tree is newT, and bring
+     * the working directory from the tree of oldID to newT. **/
+    private static void finish(String oldID, String newID, gitlet.Tree newT, String reason) {
+        String branch = getActiveBranch();
+        if (!REFS.compareAndSwap(branch, oldID, newID)) {
+            gitlet.LockFile.fail("Branch " + branch + " was moved by another command; try again.");
+        }
+        REFLOG.batch()
+                .add(branch, oldID, newID, reason)
+                .add(gitlet.RefLog.HEAD_LOG, oldID, newID, reason)
+                .write();
+
+        updateWorkingFiles(gitlet.Commit.treeOf(oldID), newT);
+    }
+
+    /** Record a new commit in the message index and its changed files in a Bloom filter.
+     * Only called once the branch has moved, so a replay that stops on a conflict
+     * leaves nothing in either. **/
+    private static void indexCommit(String commitID, String msg, Set<String> changed) {
+        gitlet.MessageIndex.indexCommit(commitID, msg);
+        gitlet.BloomFilter.saveFor(commitID, changed);
+    }
+
+    /** Return a mutable copy of the tree of the commit. **/
+    private static gitlet.Tree copyOf(String commitID) {
+        gitlet.Tree t = gitlet.Tree.createTree();
+        t.getMap().putAll(gitlet.Commit.treeOf(commitID).getMap());
+        return t;
+    }
+}
@@ -3,6 +3,7 @@ import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static gitlet.Commit.*;
 import static gitlet.GraphObj.closestVertexToNodes;
@@ -10,7 +11,14 @@ import static gitlet.GraphObj.createGraphMap;
 import static gitlet.Utils.*;
 
 /** Represents a gitlet repository.
- *  Repository contains all the operational commands in Gitlet.
+ *  Repository contains all the operational commands in Gitlet, which work on
+ *  the repository in the current working directory. Other programs can also
+ *  open a handle on any repository with open and query it in-process, several
+ *  repositories at once. Handles only read: they never use the static fields
+ *  below, which belong to the command line, take no locks and stage no
+ *  objects, so the per-process state of LockFile and Durable, which is only
+ *  installed when the process ends, plays no part in them. All their
+ *  operations are safe to call from many threads at once.
  *  @author Vivek Singh
  */
 public class Repository {
@@ -35,14 +43,34 @@ public class Repository {
     public static final File HEAD = join(GITLET_DIR, "HEAD");
     /** File that stores the index object **/
     public static final File INDEX = join(GITLET_DIR, "index");
-    /** File stores the latest commit Master points to **/
-    public static final File MASTER = join(HEADS_DIR, "master");
+    /** Branch references, packed or loose **/
+    public static final gitlet.RefStore REFS = new gitlet.RefStore(GITLET_DIR);
+    /** History of every ref and of HEAD **/
+    public static final gitlet.RefLog REFLOG = new gitlet.RefLog(GITLET_DIR);
 
     /** Check if a Git Directory already exists */
     public static boolean checkGitDirExists() {
         return GITLET_DIR.exists();
     }
 
+    /** Take the index lock for the rest of this command. Commands that change the
+     * staging area take it before they first read the index, so two of them
+     * cannot both read the same index and lose one another's changes. */
+    public static void lockIndex() {
+        gitlet.LockFile.acquire(INDEX);
+    }
+
+    /** Read the index, including changes this command has staged but not yet installed */
+    public static gitlet.Tree readIndex() {
+        gitlet.LockFile lock = gitlet.LockFile.heldOn(INDEX);
+        return readObject(lock == null ? INDEX : lock.current(), gitlet.Tree.class);
+    }
+
+    /** Write the index into its lock file, it replaces INDEX when the command ends */
+    public static void writeIndex(gitlet.Tree t) {
+        gitlet.LockFile.acquire(INDEX).write(serialize(t));
+    }
+
     /** Check if Index (i.e Staging area) already exists */
     public static boolean indexExists() {
         return INDEX.exists();
@@ -50,7 +78,7 @@ public class Repository {
 
     /** Check if the same branch already exists in the directory */
     public static boolean branchExists(String branch) {
-        return fileExistsInDir(branch, HEADS_DIR);
+        return REFS.exists(branch);
     }
 
     /** Check if File exists in CWD */
@@ -61,22 +89,41 @@ public class Repository {
     }
 
 
+    /** Return the files named by the operands of add, in order and without repeats.
+     * "." names every file in the CWD. Throws a GitletException if a named file
+     * does not exist. */
+    public static List<String> filesToAdd(String... operands) {
+        List<String> filesInCWD = plainFilenamesIn(CWD);
+        Set<String> existing = new HashSet<>(filesInCWD);
+        Set<String> files = new LinkedHashSet<>();
+        for (String operand : operands) {
+            if (operand.equals(".")) {
+                files.addAll(filesInCWD);
+            } else if (existing.contains(operand)) {
+                files.add(operand);
+            } else {
+                throw error("File does not exist.");
+            }
+        }
+        return new ArrayList<>(files);
+    }
+
     /** Check if the staging area is empty */
     public static boolean isIndexEmpty() {
         if (!INDEX.exists()) {
             return true;
         }
-        gitlet.Tree stagingTree = readObject(INDEX, gitlet.Tree.class);
-        return stagingTree.getMap().isEmpty();
+        gitlet.Tree stagingTree = readIndex();
+        return stagingTree.size() == 0;
     }
 
     /** Check if there are currently no files to remove **/
     public static boolean filesStagedForRemovalEmpty() {
         if (!INDEX.exists()) {
-            return false;
+            return true;
         }
-        gitlet.Tree stagingTree = readObject(INDEX, gitlet.Tree.class);
-        return stagingTree.getRemoveSet().isEmpty();
+        gitlet.Tree stagingTree = readIndex();
+        return stagingTree.removed().isEmpty();
     }
     /** Check if any new files are tracked **/
     public static boolean newFilesTracked() {
@@ -90,14 +137,14 @@ public class Repository {
 
     /** Checks in Index to see if the file has been staged */
     public static boolean fileExistsInIndex(String fileName) {
-        gitlet.Tree t = readObject(INDEX, gitlet.Tree.class);
-        return t.getMap().containsKey(fileName);
+        gitlet.Tree t = readIndex();
+        return t.contains(fileName);
     }
 
 
     /** Check if there are untracked files in the CWD */
     public static boolean anyUntrackedFiles() {
-        Set<String> result = getUntrackedFiles(CWD);
+        Set<String> result = gitlet.Trace.time("untrackedFiles", () -> getUntrackedFiles(CWD));
         if (result == null) {
             return false;
         }
@@ -107,26 +154,20 @@ public class Repository {
 
     /** Check if the file is untracked */
     public static boolean isFileUntracked(String fileName) {
-        Set<String> untrackedFiles = getUntrackedFiles(CWD);
+        Set<String> untrackedFiles = gitlet.Trace.time("untrackedFiles", () -> getUntrackedFiles(CWD));
         if (untrackedFiles == null) {
             return true;
         }
         return untrackedFiles.contains(fileName);
     }
 
-    /** Create an object file inside Gitlet with file name equal to the sha value of its contents.
-     * Can be for a commit, blob or tree object.
+    /** Return the object file inside Gitlet with file name equal to the sha value of its contents.
+     * Can be for a commit, blob or tree object. The contents are written through
+     * gitlet.Durable, which puts the file in place at the next barrier.
      **/
     public static File createObjectFile(Object o, File dir) {
         String sha = sha1(o);
-        File shaObj = join(dir, sha);
-        try {
-            shaObj.createNewFile();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-
-        return shaObj;
+        return join(dir, sha);
     }
 
     /** Create a commit obj file in the Commit DIR */
@@ -152,56 +193,45 @@ public class Repository {
     public static Set<String> getUntrackedFiles(File dir) {
         List<String> filesInDir = plainFilenamesIn(dir);
 
-        if (!INDEX.exists()) {
-            return new HashSet<>(filesInDir);
-        }
-
         if (filesInDir == null) {
             return null;
         }
-        Set<String> allFilesInGit = new HashSet<>();
         Set<String> untrackedFiles = new HashSet<>();
-        Set<String> filesTracked;
-        Set<String> filesStaged;
         gitlet.Tree t = getLatestCommitTreeObj(getLatestIDInHEAD());
-        if (t != null) {
-            filesTracked = t.getMap().keySet();
-            allFilesInGit.addAll(filesTracked);
-            allFilesInGit.addAll(t.getRemoveSet());
-        }
-        gitlet.Tree t2 = readObject(INDEX, gitlet.Tree.class);
-        if (t2 != null) {
-            filesStaged = t2.getMap().keySet();
-            allFilesInGit.addAll(filesStaged);
-            allFilesInGit.addAll(t2.getRemoveSet());
-        }
+        /* No index yet means nothing is staged, as after init. */
+        gitlet.Tree t2 = INDEX.exists() ? readIndex() : null;
 
         for (String file : filesInDir) {
-            if (!allFilesInGit.contains(file)) {
+            if (!tracks(t, file) && !tracks(t2, file)) {
                 untrackedFiles.add(file);
             }
         }
         return new HashSet<>(untrackedFiles);
     }
 
+    /** Check if the tree, which may be null, tracks the file or stages it for removal */
+    private static boolean tracks(gitlet.Tree t, String file) {
+        return t != null && (t.contains(file) || t.isRemoved(file));
+    }
+
     /** Clear the staging area by removing all the (fileName : SHA val) mappings */
     public static void clearStagingArea() {
-        gitlet.Tree stagingTree = readObject(INDEX, gitlet.Tree.class);
+        gitlet.Tree stagingTree = readIndex();
         stagingTree.getMap().clear();
         stagingTree.getRemoveSet().clear();
-        writeObject(INDEX, stagingTree);
+        writeIndex(stagingTree);
     }
 
     /** Add file to INDEX unless the file remains unchanged from previous commit
      * @param fileName name of the file
      */
     public static void addToIndex(String fileName) {
-        gitlet.Tree indexObj = readObject(INDEX, gitlet.Tree.class);
+        gitlet.Tree indexObj = readIndex();
 
         if (indexObj.getRemoveSet().contains(fileName)) {
             indexObj.getRemoveSet().remove(fileName);
-            writeObject(INDEX, indexObj);
-            System.exit(0);
+            writeIndex(indexObj);
+            return;
         }
 
         String contents = readContentsAsString(join(CWD, fileName));
@@ -211,16 +241,16 @@ public class Repository {
         if (isIndexEmpty()) {
             boolean fileExists = sameFileInLatestCommit(fileName, blobSHA);
             if (fileExists) {
-                System.exit(0);
+                return;
             }
         }
 
         if (!indexObj.getMap().containsKey(fileName)
                 || !indexObj.getMap().get(fileName).equals(blobSHA)) {
             File blobObjFile = createBlobObj(contents);
-            writeContents(blobObjFile, contents);
+            gitlet.Durable.stage(blobObjFile, contents);
             indexObj.getMap().put(fileName, blobSHA);
-            writeObject(INDEX, indexObj);
+            writeIndex(indexObj);
         }
 
     }
@@ -237,29 +267,43 @@ public class Repository {
         return t;
     }
 
-    /** Creates a new branch in the HEADS_DIR */
-    public static void createBranch(String branch) {
+    /** Creates the new branches, all pointing at the latest commit, in one ref transaction */
+    public static void createBranch(String... branches) {
         String activeBranchID = getLatestIDInHEAD();
 
-        File newBranch = join(HEADS_DIR, branch);
-
-        try {
-            newBranch.createNewFile();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        gitlet.RefStore.Transaction t = REFS.transaction();
+        for (String branch : branches) {
+            t.create(branch, activeBranchID);
         }
 
-        writeContents(newBranch, activeBranchID);
+        if (!t.commit()) {
+            throw error("A branch with that name already exists.");
+        }
 
+        gitlet.RefLog.Batch log = REFLOG.batch();
+        for (String branch : branches) {
+            log.add(branch, null, activeBranchID, "branch: Created from " + getActiveBranch());
+        }
+        log.write();
     }
 
     /** Overwrite the file in a directory with a different version from a commit */
     public static void overwriteFile(String fileName, String savedFile, File dir) {
         File f = join(dir, fileName);
-        String contents = readContentsAsString(join(BLOB_DIR, savedFile));
+        String contents = readContentsAsString(blobFile(savedFile));
         writeContents(f, contents);
     }
 
+    /** Return the file of the blob with the given id. In a partial clone a missing
+     * blob is fetched from the promisor repository first. */
+    public static File blobFile(String blobID) {
+        File f = join(BLOB_DIR, blobID);
+        if (!f.exists() && gitlet.Promisor.isPartial()) {
+            gitlet.Promisor.fetchBlobs(List.of(blobID));
+        }
+        return f;
+    }
+
     /** Check if the file exists in the given directory */
     public static boolean fileExistsInDir(String fileName, File dir) {
         File f =  join(dir, fileName);
@@ -281,11 +325,10 @@ public class Repository {
         gitlet.Tree treeObj = getCommitTreeObj(getCommitObj(commitID, COMMIT_DIR));
 
         if (treeObj != null) {
-            if (treeObj.getMap().containsKey(fileName)) {
-                overwriteFile(fileName, treeObj.getMap().get(fileName), CWD);
+            if (treeObj.contains(fileName)) {
+                overwriteFile(fileName, treeObj.get(fileName), CWD);
             } else {
-                System.out.println("File does not exist in that commit.");
-                System.exit(0);
+                throw error("File does not exist in that commit.");
             }
         }
     }
@@ -306,37 +349,36 @@ public class Repository {
     }
     /** Checkout (Switch) to the given branch **/
     public static void checkoutBranch(String branch) {
-        String commitID = readContentsAsString(join(HEADS_DIR, branch));
+        String commitID = REFS.read(branch);
         gitlet.Tree branchTreeObj = getCommitTreeObj(getCommitObj(commitID, COMMIT_DIR));
         gitlet.Tree latestTreeObj = getLatestCommitTreeObj(getLatestIDInHEAD());
-        Set<String> trackedFiles;
-        Set<String> branchFiles;
 
         if (branchTreeObj != null) {
-            branchFiles = branchTreeObj.getMap().keySet();
-            List<String> listOfFiles = plainFilenamesIn(CWD);
-            for (String file : branchFiles) {
-                if (listOfFiles.contains(file)) {
-                    overwriteFile(file, branchTreeObj.getMap().get(file), CWD);
+            gitlet.Promisor.fetchBlobs(idsInCone(branchTreeObj));
+            Set<String> listOfFiles = new HashSet<>(plainFilenamesIn(CWD));
+            branchTreeObj.forEach((file, fileSHA) -> {
+                if (!gitlet.Sparse.includes(file)) {
+                    if (listOfFiles.contains(file)) {
+                        restrictedDelete(file);
+                    }
+                } else if (listOfFiles.contains(file)) {
+                    overwriteFile(file, fileSHA, CWD);
                 } else {
-                    String fileSHA = branchTreeObj.getMap().get(file);
-                    File contentPath = join(BLOB_DIR, fileSHA);
+                    File contentPath = blobFile(fileSHA);
                     createFileWithContents(join(CWD, file), contentPath);
                 }
-            }
+            });
 
             if (latestTreeObj != null) {
-                trackedFiles = latestTreeObj.getMap().keySet();
-                for (String file : trackedFiles) {
-                    if (!branchFiles.contains(file)) {
+                for (String file : latestTreeObj.paths()) {
+                    if (!branchTreeObj.contains(file)) {
                         restrictedDelete(file);
                     }
                 }
             }
         } else {
             if (latestTreeObj != null) {
-                trackedFiles = latestTreeObj.getMap().keySet();
-                for (String file : trackedFiles) {
+                for (String file : latestTreeObj.paths()) {
                     restrictedDelete(file);
                 }
             }
@@ -348,32 +390,73 @@ public class Repository {
         gitlet.Repository.changeActiveBranch(branch);
     }
 
+    /** Bring the working directory from the tree from to the tree to, writing
+     * or deleting only the files in the sparse checkout cone that differ **/
+    public static void updateWorkingFiles(gitlet.Tree from, gitlet.Tree to) {
+        List<String> files = new ArrayList<>();
+        List<String> blobs = new ArrayList<>();
+        for (String file : gitlet.Tree.changedPaths(from, to)) {
+            if (gitlet.Sparse.includes(file)) {
+                files.add(file);
+                if (to.contains(file)) {
+                    blobs.add(to.get(file));
+                }
+            }
+        }
+        gitlet.Promisor.fetchBlobs(blobs);
+        for (String file : files) {
+            if (to.contains(file)) {
+                writeContents(join(CWD, file), readContentsAsString(blobFile(to.get(file))));
+            } else {
+                restrictedDelete(join(CWD, file));
+            }
+        }
+    }
+
+    /** Return the blob ids of the files of t in the sparse checkout cone **/
+    public static List<String> idsInCone(gitlet.Tree t) {
+        if (!gitlet.Sparse.enabled()) {
+            return new ArrayList<>(t.ids());
+        }
+        List<String> ids = new ArrayList<>();
+        for (String file : t.paths()) {
+            if (gitlet.Sparse.includes(file)) {
+                ids.add(t.get(file));
+            }
+        }
+        return ids;
+    }
+
     /**
      * @param branch Name of the given branch
      * @return Commit ID of the latest common ancestor (split point)
      */
     public static String findSplitPoint(String branch) {
-        List<String> commits = plainFilenamesIn(COMMIT_DIR);
-        gitlet.GraphObj G = new gitlet.GraphObj(commits.size());
-        HashMap<String, Integer> graphMap = createGraphMap();
+        HashMap<gitlet.ObjectId, Integer> graphMap = createGraphMap();
+        /* The id of every vertex, so that each id is parsed once and looked up by position. */
+        gitlet.ObjectId[] ids = new gitlet.ObjectId[graphMap.size()];
+        for (Map.Entry<gitlet.ObjectId, Integer> e : graphMap.entrySet()) {
+            ids[e.getValue()] = e.getKey();
+        }
+        gitlet.GraphObj G = new gitlet.GraphObj(ids.length);
         String headBranch = getLatestIDInHEAD();
-        int source1 = graphMap.get(headBranch);
-        String otherBranch = readContentsAsString(join(HEADS_DIR, branch));
-        int source2 = graphMap.get(otherBranch);
-        int dest = graphMap.get(gitlet.Commit.findInitCommitSHA());
-        for (String commit : commits) {
-            int vertex1 = graphMap.get(commit);
-            gitlet.Commit obj = getCommitObj(commit, COMMIT_DIR);
+        int source1 = graphMap.get(gitlet.ObjectId.fromHex(headBranch));
+        String otherBranch = REFS.read(branch);
+        int source2 = graphMap.get(gitlet.ObjectId.fromHex(otherBranch));
+        int dest = -1;
+        for (int vertex1 = 0; vertex1 < ids.length; vertex1++) {
+            gitlet.Commit obj = getCommitObj(ids[vertex1].name(), COMMIT_DIR);
 
             if (obj.getParent() == null) {
+                dest = vertex1;
                 continue;
             }
 
-            int vertex2 = graphMap.get(obj.getParent());
+            int vertex2 = graphMap.get(gitlet.ObjectId.fromHex(obj.getParent()));
             G.addEdge(vertex1, vertex2);
 
             if (obj.getParent2() != null) {
-                int vertex3 = graphMap.get(obj.getParent2());
+                int vertex3 = graphMap.get(gitlet.ObjectId.fromHex(obj.getParent2()));
                 G.addEdge(vertex1, vertex3);
             }
 
@@ -405,23 +488,15 @@ public class Repository {
             latestCommonNode = closestVertexToNodes(distFromHEAD, distFromOther, otherBranchSet);
         }
 
-        String splitID = null;
-
-        for (String id : graphMap.keySet()) {
-            if (graphMap.get(id).equals(latestCommonNode)) {
-                splitID = id;
-                break;
-            }
-        }
-        return splitID;
+        return ids[latestCommonNode].name();
     }
 
     /** Check if the same file exists in both the given Tree Objects **/
     public static boolean sameFileIn(String file, gitlet.Tree m1, gitlet.Tree m2) {
-        if (!m2.getMap().containsKey(file)) {
+        if (!m2.contains(file)) {
             return false;
         }
-        return m1.getMap().get(file).equals(m2.getMap().get(file));
+        return m1.get(file).equals(m2.get(file));
     }
     /** Check if the file exists in all the specified sets **/
     public static boolean fileExistsIn(String fileName, Set<String> ... s) {
@@ -442,15 +517,15 @@ public class Repository {
         String contents1 = "";
         String contents2 = "";
         if (t1 != null && t2 != null) {
-            f1 = join(BLOB_DIR, t1.getMap().get(file));
-            f2 = join(BLOB_DIR, t2.getMap().get(file));
+            f1 = blobFile(t1.get(file));
+            f2 = blobFile(t2.get(file));
             contents1 = readContentsAsString(f1);
             contents2 =  readContentsAsString(f2);
         } else if (t2 == null && t1 != null) {
-            f1 = join(BLOB_DIR, t1.getMap().get(file));
+            f1 = blobFile(t1.get(file));
             contents1 = readContentsAsString(f1);
         } else {
-            f2 = join(BLOB_DIR, t2.getMap().get(file));
+            f2 = blobFile(t2.get(file));
             contents2 =  readContentsAsString(f2);
         }
         return "<<<<<<< HEAD\n"
@@ -458,6 +533,42 @@ public class Repository {
                 + contents2 + ">>>>>>>\n";
     }
 
+    /** Merge the given branch into the current branch, fast-forwarding when the
+     * current branch is the split point.
+     * @param branch Name of the branch to merge into the current branch.
+     */
+    public static void mergeBranch(String branch) {
+        if (newFilesTracked()) {
+            throw error("You have uncommitted changes.");
+        }
+
+        if (!branchExists(branch)) {
+            throw error("A branch with that name does not exist.");
+        }
+        if (isCurrentBranch(branch)) {
+            throw error("Cannot merge a branch with itself.");
+        }
+
+        if (anyUntrackedFiles()) {
+            throw error("There is an untracked file in the way; delete it, or add and commit it first.");
+        }
+
+        String splitCommit = gitlet.Trace.time("findSplitPoint", () -> findSplitPoint(branch));
+        String otherBranch = latestCommitIn(branch);
+        String currentBranch = getLatestIDInHEAD();
+        if (splitCommit.equals(otherBranch)) {
+            throw error("Given branch is an ancestor of the current branch.");
+        }
+
+        if (splitCommit.equals(currentBranch)) {
+            checkoutBranch(branch);
+            System.out.println("Current branch fast-forwarded.");
+            return;
+        }
+
+        merge(splitCommit, branch);
+    }
+
     /**
      * Merge function merges the files in the "Given Branch" with the files in
      * the "Current Branch" based on the specified merge rule set.
@@ -469,20 +580,27 @@ public class Repository {
         gitlet.Tree splitT = getCommitTreeObj(getCommitObj(splitC, COMMIT_DIR));
         gitlet.Tree currT = getCommitTreeObj(getCommitObj(getLatestIDInHEAD(), COMMIT_DIR));
         gitlet.Tree otherT = getCommitTreeObj(getCommitObj(latestCommitIn(branch), COMMIT_DIR));
-        gitlet.Tree indexT = readObject(INDEX, gitlet.Tree.class);
+        gitlet.Tree indexT = readIndex();
         if (currT != null && otherT != null) {
-            Set<String> currSet = new HashSet<>(currT.getMap().keySet());
-            currSet.addAll(currT.getRemoveSet());
-            Set<String> otherSet = new HashSet<>(otherT.getMap().keySet());
-            otherSet.addAll(otherT.getRemoveSet());
+            List<String> otherBlobs = new ArrayList<>();
+            for (String file : otherT.paths()) {
+                if (!sameFileIn(file, otherT, currT) && gitlet.Sparse.includes(file)) {
+                    otherBlobs.add(otherT.get(file));
+                }
+            }
+            gitlet.Promisor.fetchBlobs(otherBlobs);
+            Set<String> currSet = new HashSet<>(currT.paths());
+            currSet.addAll(currT.removed());
+            Set<String> otherSet = new HashSet<>(otherT.paths());
+            otherSet.addAll(otherT.removed());
             Set<String> splitSet = null;
             Set<String> allFiles = new HashSet<>(currSet);
             allFiles.addAll(otherSet);
             List<String> filesInDIR = plainFilenamesIn(CWD);
             Set<String> filesToRemove = new HashSet<>(filesInDIR);
             if (splitT != null) {
-                splitSet = new HashSet<>(splitT.getMap().keySet());
-                splitSet.addAll(splitT.getRemoveSet());
+                splitSet = new HashSet<>(splitT.paths());
+                splitSet.addAll(splitT.removed());
                 allFiles.addAll(splitSet);
                 filesToRemove.removeAll(splitSet);
             }
@@ -491,24 +609,23 @@ public class Repository {
             for (String file : filesToRemove) {
                 restrictedDelete(file);
             }
-            boolean conflictFlag = false;
+            /* Conflicting files, each with the tree of the other side, null if it deleted the file */
+            Map<String, gitlet.Tree> conflicts = new TreeMap<>();
             for (String file : allFiles) {
                 if (fileExistsIn(file, splitSet, currSet, otherSet)) {
                     if (sameFileIn(file, splitT, currT) && !sameFileIn(file, splitT, otherT)) {
-                        indexT.getMap().put(file, otherT.getMap().get(file));
-                        overwriteFile(file, otherT.getMap().get(file), CWD);
+                        indexT.getMap().put(file, otherT.get(file));
+                        if (gitlet.Sparse.includes(file)) {
+                            overwriteFile(file, otherT.get(file), CWD);
+                        }
                     } else if (!sameFileIn(file, splitT, otherT)
                             && !sameFileIn(file, currT, otherT)
                             && !sameFileIn(file, splitT, currT)) {
-                        writeContents(join(CWD, file), mergeFileContents(file, currT, otherT));
-                        addToIndex(file);
-                        conflictFlag = true;
+                        conflicts.put(file, otherT);
                     }
                 } else if (fileExistsIn(file, splitSet) && !fileExistsIn(file, currSet)) {
                     if (fileExistsIn(file, otherSet) && !sameFileIn(file, splitT, otherT)) {
-                        writeContents(join(CWD, file), mergeFileContents(file, currT, otherT));
-                        addToIndex(file);
-                        conflictFlag = true;
+                        conflicts.put(file, otherT);
                     }
                 } else if (fileExistsIn(file, splitSet, currSet)
                         && !fileExistsIn(file, otherSet)) {
@@ -516,37 +633,55 @@ public class Repository {
                         indexT.getRemoveSet().add(file);
                         restrictedDelete(join(CWD, file));
                     } else {
-                        writeContents(join(CWD, file), mergeFileContents(file, currT, null));
-                        addToIndex(file);
-                        conflictFlag = true;
+                        conflicts.put(file, null);
                     }
                 } else if (!fileExistsIn(file, splitSet)) {
                     if (!fileExistsIn(file, currSet) && fileExistsIn(file, otherSet)) {
-                        indexT.getMap().put(file, otherT.getMap().get(file));
-                        File f = join(CWD, file);
-                        File f2 = join(BLOB_DIR, otherT.getMap().get(file));
-                        createFileWithContents(f, f2);
+                        indexT.getMap().put(file, otherT.get(file));
+                        if (gitlet.Sparse.includes(file)) {
+                            File f = join(CWD, file);
+                            File f2 = blobFile(otherT.get(file));
+                            createFileWithContents(f, f2);
+                        }
                     } else if (fileExistsIn(file, currSet, otherSet)
                         && !sameFileIn(file, currT, otherT)) {
-                        writeContents(join(CWD, file), mergeFileContents(file, currT, otherT));
-                        addToIndex(file);
-                        conflictFlag = true;
+                        conflicts.put(file, otherT);
                     }
                 }
             }
-            writeObject(INDEX, indexT);
+            /* Conflicts are written even outside the sparse cone, so that they can be
+             * resolved; in a partial clone both sides may not have been fetched yet. */
+            List<String> conflictBlobs = new ArrayList<>();
+            conflicts.forEach((file, t) -> {
+                for (gitlet.Tree side : new gitlet.Tree[] {currT, t}) {
+                    if (side != null && side.contains(file)) {
+                        conflictBlobs.add(side.get(file));
+                    }
+                }
+            });
+            gitlet.Promisor.fetchBlobs(conflictBlobs);
+            for (Map.Entry<String, gitlet.Tree> e : conflicts.entrySet()) {
+                String file = e.getKey();
+                writeContents(join(CWD, file), mergeFileContents(file, currT, e.getValue()));
+                addToIndex(file);
+            }
+            writeIndex(indexT);
             createMergeCommit(branch);
-            if (conflictFlag) {
+            if (!conflicts.isEmpty()) {
                 System.out.println("Encountered a merge conflict.");
             }
         }
     }
 
-    /** Delete the given branch if it exists **/
-    public static void removeBranch(String branch) {
-        File f = join(HEADS_DIR, branch);
-        if (!f.isDirectory()) {
-            f.delete();
+    /** Delete the given branches in one ref transaction **/
+    public static void removeBranch(String... branches) {
+        gitlet.RefStore.Transaction t = REFS.transaction();
+        for (String branch : branches) {
+            t.delete(branch);
+        }
+        t.commit();
+        for (String branch : branches) {
+            REFLOG.delete(branch);
         }
     }
 
@@ -559,10 +694,9 @@ public class Repository {
     public static void removeFile(String fileName) {
 
         if (isFileUntracked(fileName)) {
-            System.out.println("No reason to remove the file.");
-            System.exit(0);
+            throw error("No reason to remove the file.");
         }
-        gitlet.Tree t = readObject(INDEX, gitlet.Tree.class);
+        gitlet.Tree t = readIndex();
         List<String> listOfFiles = plainFilenamesIn(CWD);
 
         if (fileInHEADCommit(fileName)) {
@@ -577,7 +711,7 @@ public class Repository {
             t.getMap().remove(fileName);
         }
 
-        writeObject(INDEX, t);
+        writeIndex(t);
     }
 
     /** Format the date to the specified format
@@ -592,7 +726,7 @@ public class Repository {
      * files staged for removal, modified files and untracked files.
      */
     public static void printStatus() {
-        List<String> files = plainFilenamesIn(HEADS_DIR);
+        List<String> files = REFS.names();
         String branch = getActiveBranch();
         System.out.println("=== Branches ===");
         for (String file : files) {
@@ -606,7 +740,7 @@ public class Repository {
         if (!INDEX.exists()) {
             indexObj = null;
         } else {
-            indexObj = readObject(INDEX, gitlet.Tree.class);
+            indexObj = readIndex();
         }
 
         System.out.println(" ");
@@ -632,16 +766,47 @@ public class Repository {
         System.out.println(" ");
     }
 
-    /** Update the active branch to point to latest commit */
-    public static void updateActiveBranch(Object c) {
+    /** Update the active branch to point to latest commit and record the move
+     * in the reflogs of the branch and of HEAD.
+     * @param c Serialised commit
+     * @param oldID Commit the branch must still point at, the parent of c
+     * @param reason Reflog message
+     */
+    public static void updateActiveBranch(Object c, String oldID, String reason) {
         String branch = getActiveBranch();
         String sha = sha1(c);
-        writeContents(join(HEADS_DIR, branch), sha);
+        if (!REFS.compareAndSwap(branch, oldID, sha)) {
+            gitlet.LockFile.fail("Branch " + branch + " was moved by another command; try again.");
+        }
+        REFLOG.batch()
+                .add(branch, oldID, sha, reason)
+                .add(gitlet.RefLog.HEAD_LOG, oldID, sha, reason)
+                .write();
     }
 
     /** Checkout to the given Branch */
     public static void changeActiveBranch(String branch) {
-        writeContents(HEAD, branch);
+        String from = getActiveBranch();
+        String oldID = getLatestIDInHEAD();
+        gitlet.LockFile head = gitlet.LockFile.acquire(HEAD);
+        head.write(branch);
+        head.commit();
+        REFLOG.batch()
+                .add(gitlet.RefLog.HEAD_LOG, oldID, REFS.read(branch),
+                        "checkout: moving from " + from + " to " + branch)
+                .write();
+    }
+
+    /** Print the reflog of the given ref, the latest entry first */
+    public static void printReflog(String ref) {
+        List<gitlet.RefLog.Entry> entries = REFLOG.entries(ref);
+        if (entries.isEmpty()) {
+            throw error("No reflog for that ref.");
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            gitlet.RefLog.Entry e = entries.get(i);
+            System.out.println(e.newID.substring(0, 7) + " " + ref + "@{" + i + "}: " + e.message);
+        }
     }
 
     /** Get the branch that HEAD is pointing at */
@@ -652,11 +817,11 @@ public class Repository {
     /** Return the most recent commit id of the branch HEAD points at */
     public static String getLatestIDInHEAD() {
         String branch = readContentsAsString(HEAD);
-        return readContentsAsString(join(HEADS_DIR, branch));
+        return REFS.read(branch);
     }
     /** Get the latest commit in the provided branch **/
     public static String latestCommitIn(String branch) {
-        return readContentsAsString(join(HEADS_DIR, branch));
+        return REFS.read(branch);
     }
     /** Initialise the staging area in Gitlet **/
     public static void setupStagingArea(String fileName) {
@@ -676,7 +841,7 @@ public class Repository {
 
         File blobObjFile = createBlobObj(contents);
 
-        writeContents(blobObjFile, contents);
+        gitlet.Durable.stage(blobObjFile, contents);
 
         /* Map the file name to the sha of the blob obj and write to INDEX */
 
@@ -684,7 +849,7 @@ public class Repository {
 
         indexObj.getMap().put(fileName, blobSHA);
 
-        writeObject(INDEX, indexObj);
+        writeIndex(indexObj);
 
     }
 
@@ -696,11 +861,20 @@ public class Repository {
      *          commits (dir)
      *          blobs   (dir)
      *          trees   (dir)
+     *          tmp     (dir, objects written but not yet in place)
      *      refs
      *          heads
      *              master (file)
+     *      packed-refs (file, created by the first ref transaction)
+     *      logs
+     *          HEAD (file)
+     *          refs
+     *              heads
+     *                  master (file)
      *      HEAD (file)
      *      INDEX (file)
+     *      msg-index (dir, created by the first find)
+     *      bloom (dir, created by the first commit)
      *
      * Creates the initial commit
      * Creates the head, master references
@@ -721,11 +895,6 @@ public class Repository {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        try {
-            MASTER.createNewFile();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
 
         /* Create the first commit. */
         gitlet.Commit c = gitlet.Commit.initialCommit();
@@ -734,12 +903,185 @@ public class Repository {
         byte[] serialisedCommit = serialize(c);
         File f = createCommitObj(serialisedCommit);
 
+        /* Save the commit object in objects/commits dir. */
+        gitlet.Durable.stage(f, serialisedCommit);
+
         writeContents(HEAD, "master");
 
         /* update master to point to latest commit. */
-        updateActiveBranch(serialisedCommit);
+        updateActiveBranch(serialisedCommit, null, "commit (initial): " + c.getMsg());
+    }
 
-        /* Save the commit object in objects/commits dir. */
-        writeObject(f, c);
+    /* HANDLES: read-only; the only file one may write is the message index,
+     * which findByMessage builds if the repository has none yet. */
+
+    /** The .gitlet directory of this handle **/
+    private final File gitletDir;
+    /** Commit directory of this handle **/
+    private final File commitDir;
+    /** Branch references of this handle **/
+    private final gitlet.RefStore refs;
+    /** Commits read so far; objects never change, so they can be shared by all readers **/
+    private final Map<String, gitlet.Commit> commits = new ConcurrentHashMap<>();
+    /** Trees read so far **/
+    private final Map<String, gitlet.Tree> trees = new ConcurrentHashMap<>();
+
+    private Repository(File gitletDir) {
+        this.gitletDir = gitletDir;
+        this.commitDir = join(gitletDir, "objects", "commits");
+        this.refs = new gitlet.RefStore(gitletDir);
+    }
+
+    /** Open the repository whose working directory is dir.
+     * Throws a GitletException if dir holds no gitlet repository. */
+    public static Repository open(File dir) {
+        File gitlet = join(dir, ".gitlet");
+        if (!join(gitlet, "objects").isDirectory()) {
+            throw error("Not in an initialized Gitlet directory.");
+        }
+        return new Repository(gitlet);
+    }
+
+    /** Return the branch HEAD points at */
+    public String currentBranch() {
+        return readContentsAsString(join(gitletDir, "HEAD"));
+    }
+
+    /** Return the names of all branches in lexicographic order */
+    public List<String> branches() {
+        return refs.names();
+    }
+
+    /** Return the id of the commit a branch points at, or null if there is no such branch */
+    public String branchTip(String branch) {
+        return refs.read(branch);
+    }
+
+    /** Return the full id of the commit named by rev, which is a branch name or a
+     * full or abbreviated commit id. Throws a GitletException if it names no commit. */
+    public String resolve(String rev) {
+        String id = refs.read(rev);
+        if (id != null) {
+            return id;
+        }
+        if (rev.length() == UID_LENGTH && join(commitDir, rev).isFile()) {
+            return rev;
+        }
+        String found = null;
+        if (rev.length() >= 4) {
+            for (String name : plainFilenamesIn(commitDir)) {
+                if (name.startsWith(rev)) {
+                    if (found != null) {
+                        throw error("Ambiguous commit id %s.", rev);
+                    }
+                    found = name;
+                }
+            }
+        }
+        if (found == null) {
+            throw error("No commit with that id exists.");
+        }
+        return found;
+    }
+
+    /** Return the commit with the given full id. Throws a GitletException if there is none. */
+    public gitlet.Commit commit(String id) {
+        gitlet.Commit c = commits.get(id);
+        if (c == null) {
+            File f = join(commitDir, id);
+            if (!f.isFile()) {
+                throw error("No commit with that id exists.");
+            }
+            c = readObject(f, gitlet.Commit.class);
+            commits.put(id, c);
+        }
+        return c;
+    }
+
+    /** Return the files of the given commit, mapped to the ids of their blobs */
+    public Map<String, String> files(String commitID) {
+        String treeID = commit(commitID).getTree();
+        if (treeID == null) {
+            return Collections.emptyMap();
+        }
+        gitlet.Tree t = trees.computeIfAbsent(treeID, id -> gitlet.Pack.readTree(gitletDir, id));
+        return new TreeFiles(t);
+    }
+
+    /** Read-only map over the files of a cached tree. It answers from the tree
+     * itself, so a packed tree is never unpacked and can be shared by threads. */
+    private static final class TreeFiles extends AbstractMap<String, String> {
+        private final gitlet.Tree tree;
+
+        TreeFiles(gitlet.Tree tree) {
+            this.tree = tree;
+        }
+
+        @Override
+        public String get(Object file) {
+            return file instanceof String ? tree.get((String) file) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object file) {
+            return file instanceof String && tree.contains((String) file);
+        }
+
+        @Override
+        public int size() {
+            return tree.size();
+        }
+
+        @Override
+        public Set<Map.Entry<String, String>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Map.Entry<String, String>> iterator() {
+                    Iterator<String> paths = tree.paths().iterator();
+                    return new Iterator<>() {
+                        @Override
+                        public boolean hasNext() {
+                            return paths.hasNext();
+                        }
+
+                        @Override
+                        public Map.Entry<String, String> next() {
+                            String file = paths.next();
+                            return new AbstractMap.SimpleImmutableEntry<>(file, tree.get(file));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return tree.size();
+                }
+            };
+        }
+    }
+
+    /** Return the contents of the blob with the given id. Throws a GitletException if it
+     * is not stored here, as with blobs a partial clone has not fetched yet. */
+    public byte[] blob(String blobID) {
+        File f = gitlet.Pack.Kind.BLOB.file(gitletDir, blobID);
+        if (!f.isFile()) {
+            throw error("No blob with that id exists.");
+        }
+        return readContents(f);
+    }
+
+    /** Return the ids of at most limit commits of the history of commitID, following
+     * first parents, newest first */
+    public List<String> log(String commitID, int limit) {
+        List<String> ids = new ArrayList<>();
+        for (String id = commitID; id != null && ids.size() < limit; id = commit(id).getParent()) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    /** Return the ids of the commits whose message equals msg, in lexicographical order */
+    public List<String> findByMessage(String msg) {
+        return gitlet.MessageIndex.load(gitletDir).findExact(msg);
     }
 }
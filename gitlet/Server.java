@@ -0,0 +1,323 @@
+package gitlet;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static gitlet.Utils.*;
+
+/** Serves every gitlet repository below a root directory over HTTP on localhost.
+ *  The repository in ROOT/NAME is served under /NAME:
+ *      GET  /NAME/refs              one "ID NAME" line per branch
+ *      GET  /NAME/objects/KIND/ID   the stored bytes of a commit, tree or blob
+ *      POST /NAME/pack              a pack of what the "want ID" and "have ID"
+ *                                   lines of the body call for
+ *      GET  /NAME/packs/PACK        a pack produced earlier, named by the
+ *                                   Location header of the POST
+ *  Objects and packs never change once written, so they are kept in a cache
+ *  shared by all repositories and requests, and both answer single byte-range
+ *  requests so an interrupted transfer can resume. Each request runs on its own
+ *  virtual thread where the JDK has them, on a pooled thread otherwise.
+ *  @author Vivek Singh
+ */
+public class Server {
+    /** Default port to listen on **/
+    static final int DEFAULT_PORT = 8417;
+    /** Bytes of objects and packs kept in the shared cache **/
+    private static final long CACHE_BYTES = 256L << 20;
+    /** Packs larger than this are streamed and not cached **/
+    private static final int MAX_CACHED_PACK = 32 << 20;
+
+    /** Names of repositories, of object ids and of packs that may appear in a path **/
+    private static final Pattern REPO_NAME = Pattern.compile("[A-Za-z0-9._-]+");
+    /** Paths of the objects endpoint **/
+    private static final Pattern OBJECT_PATH = Pattern.compile("/([^/]+)/objects/(commit|tree|blob)/([a-f0-9]{40})");
+    /** Paths of the refs and pack endpoints **/
+    private static final Pattern REPO_PATH = Pattern.compile("/([^/]+)/(refs|pack)");
+    /** Paths of cached packs **/
+    private static final Pattern PACK_PATH = Pattern.compile("/([^/]+)/packs/([a-f0-9]{40})");
+    /** A single byte range **/
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
+    /** Directory holding one repository per subdirectory **/
+    private final File root;
+    /** Objects and packs shared by all requests **/
+    private final Cache cache = new Cache(CACHE_BYTES);
+
+    private Server(File root) {
+        this.root = root;
+    }
+
+    /** Serve the repositories below root on the given port until the process is killed. **/
+    public static void serve(String root, int port) {
+        File dir = new File(root);
+        if (!dir.isDirectory()) {
+            throw error("Directory not found.");
+        }
+        Server server = new Server(dir);
+        HttpServer http;
+        try {
+            http = HttpServer.create(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            http.createContext("/", server::handle);
+            http.setExecutor(requestExecutor());
+            http.start();
+        } catch (IOException e) {
+            throw error("Cannot listen on port %d.", port);
+        }
+        /* Port 0 picks a free port; print the one actually bound. */
+        System.out.println("Serving " + server.repositories().size()
+                + " repositories on http://localhost:" + http.getAddress().getPort() + "/");
+    }
+
+    /** Return an executor that runs every task on a new virtual thread, or a
+     * cached pool of platform threads on a JDK without virtual threads. **/
+    static ExecutorService requestExecutor() {
+        try {
+            Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /** Return the names of the repositories being served. **/
+    List<String> repositories() {
+        List<String> names = new ArrayList<>();
+        File[] dirs = root.listFiles();
+        if (dirs != null) {
+            for (File d : dirs) {
+                if (REPO_NAME.matcher(d.getName()).matches() && join(d, ".gitlet").isDirectory()) {
+                    names.add(d.getName());
+                }
+            }
+        }
+        return names;
+    }
+
+    /** Return the .gitlet directory of the named repository, or null if there is none. **/
+    private File gitletDir(String name) {
+        if (!REPO_NAME.matcher(name).matches() || name.startsWith(".")) {
+            return null;
+        }
+        File dir = join(root, name, ".gitlet");
+        return dir.isDirectory() ? dir : null;
+    }
+
+    /** Answer one request. **/
+    private void handle(HttpExchange ex) throws IOException {
+        try {
+            String path = URI.create(ex.getRequestURI().getRawPath()).getPath();
+            String method = ex.getRequestMethod();
+            Matcher m;
+            if ((m = OBJECT_PATH.matcher(path)).matches() && method.equals("GET")) {
+                File dir = gitletDir(m.group(1));
+                gitlet.Pack.Kind kind = gitlet.Pack.Kind.valueOf(m.group(2).toUpperCase());
+                File f = dir == null ? null : kind.file(dir, m.group(3));
+                if (f == null || !f.isFile()) {
+                    send(ex, 404, "No such object.");
+                    return;
+                }
+                sendRange(ex, cache.get(f.getPath(), () -> readContents(f)));
+            } else if ((m = PACK_PATH.matcher(path)).matches() && method.equals("GET")) {
+                byte[] pack = cache.peek(packKey(m.group(1), m.group(2)));
+                if (pack == null) {
+                    send(ex, 404, "No such pack.");
+                    return;
+                }
+                sendRange(ex, pack);
+            } else if ((m = REPO_PATH.matcher(path)).matches()) {
+                File dir = gitletDir(m.group(1));
+                if (dir == null) {
+                    send(ex, 404, "No such repository.");
+                } else if (m.group(2).equals("refs") && method.equals("GET")) {
+                    sendRefs(ex, dir);
+                } else if (m.group(2).equals("pack") && method.equals("POST")) {
+                    sendPack(ex, m.group(1), dir);
+                } else {
+                    send(ex, 405, "Method not allowed.");
+                }
+            } else {
+                send(ex, 404, "Not found.");
+            }
+        } catch (RuntimeException e) {
+            send(ex, 500, "Internal error.");
+        } finally {
+            ex.close();
+        }
+    }
+
+    /** Advertise the branches of the repository at dir. **/
+    private void sendRefs(HttpExchange ex, File dir) throws IOException {
+        gitlet.RefStore refs = new gitlet.RefStore(dir);
+        StringBuilder sb = new StringBuilder();
+        for (String name : refs.names()) {
+            String id = refs.read(name);
+            if (id != null) {
+                sb.append(id).append(' ').append(name).append('\n');
+            }
+        }
+        send(ex, 200, sb.toString());
+    }
+
+    /** Negotiate with the want and have lines of the request body and send the pack. **/
+    private void sendPack(HttpExchange ex, String name, File dir) throws IOException {
+        TreeSet<String> wants = new TreeSet<>();
+        TreeSet<String> haves = new TreeSet<>();
+        String body = new String(ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        for (String line : body.split("\n")) {
+            String[] words = line.trim().split(" ");
+            if (words.length == 2 && words[1].matches("[a-f0-9]{40}")) {
+                if (words[0].equals("want")) {
+                    wants.add(words[1]);
+                } else if (words[0].equals("have")) {
+                    haves.add(words[1]);
+                }
+            }
+        }
+        for (String want : wants) {
+            if (!gitlet.Pack.Kind.COMMIT.file(dir, want).isFile()) {
+                send(ex, 404, "No such commit " + want + ".");
+                return;
+            }
+        }
+        List<gitlet.Pack.Entry> objects = gitlet.Pack.negotiate(dir, wants, haves);
+        long size = 0;
+        for (gitlet.Pack.Entry e : objects) {
+            size += e.kind.file(dir, e.id).length();
+        }
+        if (size > MAX_CACHED_PACK) {
+            ex.getResponseHeaders().set("Content-Type", "application/octet-stream");
+            ex.sendResponseHeaders(200, 0);
+            try (OutputStream out = ex.getResponseBody()) {
+                gitlet.Pack.write(dir, objects, out);
+            }
+            return;
+        }
+        String packID = sha1("want " + wants + " have " + haves);
+        byte[] pack = cache.get(packKey(name, packID), () -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                gitlet.Pack.write(dir, objects, out);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+            return out.toByteArray();
+        });
+        ex.getResponseHeaders().set("Location", "/" + name + "/packs/" + packID);
+        sendRange(ex, pack);
+    }
+
+    /** Return the cache key of a pack of the named repository. **/
+    private static String packKey(String name, String packID) {
+        return "pack:" + name + "/" + packID;
+    }
+
+    /** Send contents, or the part of them named by a single byte range in the request. **/
+    private static void sendRange(HttpExchange ex, byte[] contents) throws IOException {
+        ex.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        ex.getResponseHeaders().set("Accept-Ranges", "bytes");
+        String range = ex.getRequestHeaders().getFirst("Range");
+        Matcher m = range == null ? null : RANGE.matcher(range.trim());
+        if (m == null || !m.matches() || (m.group(1).isEmpty() && m.group(2).isEmpty())) {
+            send(ex, 200, contents, 0, contents.length);
+            return;
+        }
+        long start;
+        long end;
+        if (m.group(1).isEmpty()) {
+            start = Math.max(0, contents.length - Long.parseLong(m.group(2)));
+            end = contents.length - 1;
+        } else {
+            start = Long.parseLong(m.group(1));
+            end = m.group(2).isEmpty() ? contents.length - 1
+                    : Math.min(Long.parseLong(m.group(2)), contents.length - 1);
+        }
+        if (start >= contents.length || start > end) {
+            ex.getResponseHeaders().set("Content-Range", "bytes */" + contents.length);
+            ex.sendResponseHeaders(416, -1);
+            return;
+        }
+        ex.getResponseHeaders().set("Content-Range",
+                "bytes " + start + "-" + end + "/" + contents.length);
+        send(ex, 206, contents, (int) start, (int) (end - start + 1));
+    }
+
+    /** Send a text response. **/
+    private static void send(HttpExchange ex, int status, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        send(ex, status, bytes, 0, bytes.length);
+    }
+
+    /** Send length bytes of contents starting at offset. **/
+    private static void send(HttpExchange ex, int status, byte[] contents, int offset, int length)
+            throws IOException {
+        ex.sendResponseHeaders(status, length == 0 ? -1 : length);
+        if (length > 0) {
+            try (OutputStream out = ex.getResponseBody()) {
+                out.write(contents, offset, length);
+            }
+        }
+    }
+
+    /** Loads the contents for a key that is not cached **/
+    private interface Loader {
+        byte[] load();
+    }
+
+    /** Least recently used cache of immutable contents, bounded by their total size. **/
+    private static class Cache {
+        private final long capacity;
+        private long size;
+        private final LinkedHashMap<String, byte[]> map = new LinkedHashMap<>(16, 0.75f, true);
+
+        Cache(long capacity) {
+            this.capacity = capacity;
+        }
+
+        /** Return the cached contents of key, or null. **/
+        synchronized byte[] peek(String key) {
+            return map.get(key);
+        }
+
+        /** Return the contents of key, loading and caching them if needed. Loads run
+         * outside the lock, so a slow read never holds up other requests. **/
+        byte[] get(String key, Loader loader) {
+            byte[] contents = peek(key);
+            if (contents != null) {
+                return contents;
+            }
+            contents = loader.load();
+            synchronized (this) {
+                if (contents.length <= capacity && map.put(key, contents) == null) {
+                    size += contents.length;
+                }
+                Iterator<Map.Entry<String, byte[]>> it = map.entrySet().iterator();
+                while (size > capacity && it.hasNext()) {
+                    size -= it.next().getValue().length;
+                    it.remove();
+                }
+            }
+            return contents;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package gitlet;
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** Sparse checkout: which tracked files are kept in the working directory.
+ *  The patterns in .gitlet/sparse-checkout, one per line, are globs on file
+ *  names, and a file is in the cone if any of them matches it. Without that
+ *  file every file is in the cone. Checkout, reset and merge only write files
+ *  in the cone. Files outside it stay in the commit trees, and the index,
+ *  which holds only staged changes, never needs an entry for them, so every
+ *  commit carries them forward unchanged. The working directory then holds
+ *  only the cone, and status and the checks for untracked files, which look
+ *  at the working directory, take time in the size of the cone.
+ *  @author Vivek Singh
+ */
+public class Sparse {
+    /** The patterns of the cone **/
+    static final File CONFIG = join(GITLET_DIR, "sparse-checkout");
+
+    /** Matchers of the patterns, read on first use; empty if every file is in the cone **/
+    private static List<PathMatcher> cone;
+
+    /** Return whether a sparse checkout is set. **/
+    public static boolean enabled() {
+        return !matchers().isEmpty();
+    }
+
+    /** Return whether the file is in the cone. **/
+    public static boolean includes(String file) {
+        return includes(matchers(), file);
+    }
+
+    /** Set the cone to the files matching any of the patterns, and bring the working
+     * directory to it: files of the current commit that enter the cone are written,
+     * and files that leave it are deleted unless they are staged or changed. **/
+    public static void set(String... patterns) {
+        List<PathMatcher> matchers = compile(patterns);
+        writeContents(CONFIG, String.join("\n", patterns) + "\n");
+        cone = matchers;
+        apply();
+    }
+
+    /** Print the patterns of the cone. **/
+    public static void list() {
+        if (CONFIG.exists()) {
+            for (String pattern : readPatterns()) {
+                System.out.println(pattern);
+            }
+        }
+    }
+
+    /** Put every file back in the cone and write the files of the current commit
+     * that are missing. **/
+    public static void disable() {
+        if (CONFIG.exists()) {
+            CONFIG.delete();
+        }
+        cone = new ArrayList<>();
+        apply();
+    }
+
+    /** Bring the working directory to the cone. **/
+    private static void apply() {
+        gitlet.Tree head = gitlet.Commit.getLatestCommitTreeObj(getLatestIDInHEAD());
+        if (head == null) {
+            return;
+        }
+        gitlet.Tree index = indexExists() ? readIndex() : gitlet.Tree.createTree();
+        List<String> missing = new ArrayList<>();
+        List<String> leaving = new ArrayList<>();
+        for (String file : head.paths()) {
+            boolean exists = join(CWD, file).exists();
+            if (includes(file) && !exists && !index.isRemoved(file)) {
+                missing.add(file);
+            } else if (!includes(file) && exists && !index.contains(file)) {
+                leaving.add(file);
+            }
+        }
+
+        List<String> ids = new ArrayList<>();
+        for (String file : missing) {
+            ids.add(head.get(file));
+        }
+        gitlet.Promisor.fetchBlobs(ids);
+        for (String file : missing) {
+            createFileWithContents(join(CWD, file), blobFile(head.get(file)));
+        }
+        for (String file : leaving) {
+            if (sha1(readContentsAsString(join(CWD, file))).equals(head.get(file))) {
+                restrictedDelete(join(CWD, file));
+            }
+        }
+    }
+
+    /** Return the matchers of the cone, reading them on first use. **/
+    private static List<PathMatcher> matchers() {
+        if (cone == null) {
+            cone = CONFIG.exists() ? compile(readPatterns().toArray(new String[0])) : new ArrayList<>();
+        }
+        return cone;
+    }
+
+    /** Return whether any of matchers matches the file, or whether there are none. **/
+    private static boolean includes(List<PathMatcher> matchers, String file) {
+        if (matchers.isEmpty()) {
+            return true;
+        }
+        Path path = Path.of(file);
+        for (PathMatcher m : matchers) {
+            if (m.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the patterns in the config file, skipping blank lines. **/
+    private static List<String> readPatterns() {
+        List<String> patterns = new ArrayList<>();
+        for (String line : readContentsAsString(CONFIG).split("\n")) {
+            if (!line.isBlank()) {
+                patterns.add(line.strip());
+            }
+        }
+        return patterns;
+    }
+
+    /** Return a matcher for each glob pattern. **/
+    private static List<PathMatcher> compile(String... patterns) {
+        List<PathMatcher> matchers = new ArrayList<>();
+        for (String pattern : patterns) {
+            try {
+                matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+            } catch (PatternSyntaxException e) {
+                throw error("Invalid pattern: %s", pattern);
+            }
+        }
+        return matchers;
+    }
+}
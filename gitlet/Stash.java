@@ -0,0 +1,210 @@
+package gitlet;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static gitlet.Commit.getCommitObj;
+import static gitlet.Commit.getCommitTreeObj;
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** Stashes of uncommitted changes.
+ *  A stash is two commits on top of the current commit: one whose tree is the
+ *  current commit with the staged changes applied, and one whose tree is the
+ *  whole working directory, untracked files included, with the first as its
+ *  second parent. Blobs go through gitlet.AddPipeline, so only files that
+ *  differ from the staging area are read into new blobs and blobs already
+ *  stored are not written again. The stashes are listed in .gitlet/stash,
+ *  the newest first. Pop applies only the files that differ between the
+ *  stash and the commit it was made on, and refuses to overwrite local
+ *  changes to them.
+ *  @author Vivek Singh
+ */
+public class Stash {
+    /** Ids of the stash commits, newest first **/
+    static final File STASH = join(GITLET_DIR, "stash");
+
+    /** Matches stash selectors like stash@{2} **/
+    private static final Pattern SELECTOR = Pattern.compile("stash@\\{(\\d{1,9})\\}");
+
+    /** Save the staged and working changes as a new stash and bring the working
+     * directory and the staging area back to the current commit. **/
+    public static void push() {
+        String headID = getLatestIDInHEAD();
+        gitlet.Commit head = getCommitObj(headID, COMMIT_DIR);
+        gitlet.Tree headT = getCommitTreeObj(head);
+        gitlet.Tree index = indexExists() ? readIndex() : gitlet.Tree.createTree();
+
+        gitlet.Tree staged = gitlet.Tree.createTree();
+        if (headT != null) {
+            staged.getMap().putAll(headT.getMap());
+        }
+        staged.getMap().keySet().removeAll(index.removed());
+        staged.getMap().putAll(index.getMap());
+
+        List<String> files = plainFilenamesIn(CWD);
+        gitlet.Tree work = gitlet.Tree.createTree();
+        work.getMap().putAll(staged.getMap());
+        work.getMap().putAll(gitlet.AddPipeline.stageChanged(files, staged, null));
+        Set<String> inDir = new HashSet<>(files);
+        work.getMap().keySet().removeIf(f -> !inDir.contains(f) && gitlet.Sparse.includes(f));
+
+        Map<String, String> headMap = headT == null ? new TreeMap<>() : headT.getMap();
+        if (index.size() == 0 && index.removed().isEmpty() && work.getMap().equals(headMap)) {
+            System.out.println("No local changes to save.");
+            return;
+        }
+
+        String on = getActiveBranch() + ": " + headID.substring(0, 7) + " " + head.getMsg();
+        String indexID = gitlet.Commit.stageCommit("index on " + on, headID, null, new Date(), staged);
+        String workID = gitlet.Commit.stageCommit("WIP on " + on, headID, indexID, new Date(), work);
+        List<String> ids = ids();
+        ids.add(0, workID);
+        writeIds(ids);
+
+        for (String file : work.paths()) {
+            String id = headMap.get(file);
+            if (id == null) {
+                restrictedDelete(join(CWD, file));
+            } else if (!id.equals(work.get(file))) {
+                overwriteFile(file, id, CWD);
+            }
+        }
+        for (Map.Entry<String, String> e : headMap.entrySet()) {
+            if (!work.contains(e.getKey())) {
+                createFileWithContents(join(CWD, e.getKey()), blobFile(e.getValue()));
+            }
+        }
+        writeIndex(gitlet.Tree.createTree());
+    }
+
+    /** Apply the selected stash, stash@{0} if selector is null, to the working
+     * directory and the staging area, then drop it. **/
+    public static void pop(String selector) {
+        List<String> ids = ids();
+        int n = select(selector, ids);
+        gitlet.Commit w = getCommitObj(ids.get(n), COMMIT_DIR);
+        gitlet.Tree base = gitlet.Commit.treeOf(w.getParent());
+        gitlet.Tree work = gitlet.Commit.treeOf(ids.get(n));
+        gitlet.Tree staged = gitlet.Commit.treeOf(w.getParent2());
+        gitlet.Tree headT = gitlet.Commit.getLatestCommitTreeObj(getLatestIDInHEAD());
+
+        Map<String, String> toApply = new TreeMap<>();
+        for (String file : gitlet.Tree.changedPaths(base, work)) {
+            String target = work.get(file);
+            File f = join(CWD, file);
+            String current = f.exists() ? sha1(readContentsAsString(f))
+                    : gitlet.Sparse.includes(file) ? null : get(headT, file);
+            if (Objects.equals(current, target)) {
+                continue;
+            }
+            if (!Objects.equals(current, base.get(file))) {
+                throw error("Local changes to %s would be overwritten; commit or stash them first.",
+                        file);
+            }
+            toApply.put(file, target);
+        }
+
+        List<String> blobs = new ArrayList<>();
+        for (String id : toApply.values()) {
+            if (id != null) {
+                blobs.add(id);
+            }
+        }
+        gitlet.Promisor.fetchBlobs(blobs);
+        for (Map.Entry<String, String> e : toApply.entrySet()) {
+            File f = join(CWD, e.getKey());
+            if (e.getValue() == null) {
+                restrictedDelete(f);
+            } else {
+                writeContents(f, readContentsAsString(blobFile(e.getValue())));
+            }
+        }
+
+        gitlet.Tree index = indexExists() ? readIndex() : gitlet.Tree.createTree();
+        for (String file : gitlet.Tree.changedPaths(base, staged)) {
+            String id = staged.get(file);
+            if (id == null) {
+                index.getMap().remove(file);
+                index.getRemoveSet().add(file);
+            } else if (id.equals(get(headT, file))) {
+                index.getMap().remove(file);
+            } else {
+                index.getMap().put(file, id);
+            }
+        }
+        writeIndex(index);
+
+        ids.remove(n);
+        writeIds(ids);
+    }
+
+    /** Print the stashes, the newest first. **/
+    public static void list() {
+        List<String> ids = ids();
+        for (int i = 0; i < ids.size(); i++) {
+            System.out.println("stash@{" + i + "}: " + getCommitObj(ids.get(i), COMMIT_DIR).getMsg());
+        }
+    }
+
+    /** Drop the selected stash, stash@{0} if selector is null. **/
+    public static void drop(String selector) {
+        List<String> ids = ids();
+        int n = select(selector, ids);
+        String id = ids.remove(n);
+        writeIds(ids);
+        System.out.println("Dropped stash@{" + n + "} (" + id + ")");
+    }
+
+    /** Return the ids of the stash commits, newest first. **/
+    static List<String> ids() {
+        List<String> ids = new ArrayList<>();
+        gitlet.LockFile lock = gitlet.LockFile.heldOn(STASH);
+        File f = lock == null ? STASH : lock.current();
+        if (f.exists()) {
+            for (String line : readContentsAsString(f).split("\n")) {
+                if (!line.isEmpty()) {
+                    ids.add(line);
+                }
+            }
+        }
+        return ids;
+    }
+
+    /** Write the ids of the stash commits, installed when the command ends. **/
+    private static void writeIds(List<String> ids) {
+        StringBuilder sb = new StringBuilder();
+        for (String id : ids) {
+            sb.append(id).append('\n');
+        }
+        gitlet.LockFile.acquire(STASH).write(sb.toString());
+    }
+
+    /** Return the position in ids named by selector, or 0 if it is null. **/
+    private static int select(String selector, List<String> ids) {
+        if (ids.isEmpty()) {
+            throw error("No stash entries found.");
+        }
+        if (selector == null) {
+            return 0;
+        }
+        Matcher m = SELECTOR.matcher(selector);
+        if (!m.matches() || Integer.parseInt(m.group(1)) >= ids.size()) {
+            throw error("%s is not a valid stash.", selector);
+        }
+        return Integer.parseInt(m.group(1));
+    }
+
+    /** Return the blob id of the file in t, which may be null. **/
+    private static String get(gitlet.Tree t, String file) {
+        return t == null ? null : t.get(file);
+    }
+}
@@ -0,0 +1,212 @@
+package gitlet;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/** Timings and counters of one command.
+ *  Every command runs inside a span named after it. Other code worth
+ *  measuring is timed where it is called,
+ *      Graph g = gitlet.Trace.time("bisect.graph", () -> buildGraph(bad));
+ *  or, to also count the bytes it moved, runs inside a span,
+ *      try (gitlet.Trace.Span s = gitlet.Trace.span("readObject")) {
+ *          ...
+ *          s.bytes(n);
+ *      }
+ *  Either adds its time to the span's name, and bytes go to the counter
+ *  NAME.bytes. When the environment variable GITLET_TRACE is set, a
+ *  JSON summary of every span and counter is written when the command ends,
+ *  to standard error, or appended as one line to the file GITLET_TRACE names
+ *  if it is not "1". Times of nested spans overlap: each is the wall time
+ *  spent inside spans of that name.
+ *  When JDK Flight Recorder was started with the JVM (java
+ *  -XX:StartFlightRecording ...), every span is also a gitlet.Span event on
+ *  its timeline, with or without GITLET_TRACE. This is checked once, when the
+ *  process starts, so a recording started later with jcmd sees no spans. The
+ *  event classes are only loaded when it was started, as loading them costs
+ *  more than most commands take.
+ *  @author Vivek Singh
+ */
+public class Trace {
+    /** Where the summary goes, or null if tracing is off **/
+    private static final String TARGET = System.getenv("GITLET_TRACE");
+    /** Whether spans and counters are collected **/
+    static final boolean ENABLED = TARGET != null && !TARGET.isEmpty();
+    /** Whether spans are also Flight Recorder events **/
+    private static final boolean RECORDING = FlightRecorder.isInitialized();
+
+    /** Statistics of every span, by name **/
+    private static final Map<String, Stat> SPANS = new ConcurrentHashMap<>();
+    /** Counters, by name **/
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+    /** When the command started **/
+    private static final long START = System.nanoTime();
+    /** The command being run, as named by the first argument **/
+    private static volatile String command = "";
+
+    static {
+        if (ENABLED) {
+            Runtime.getRuntime().addShutdownHook(new Thread(Trace::report, "gitlet-trace"));
+        }
+    }
+
+    /** Record that the process runs the named command. **/
+    static void command(String name) {
+        command = name;
+    }
+
+    /** Span returned when nothing records spans **/
+    private static final Span NOOP = new Span(null, false);
+
+    /** Start a span of the given name; close it to end it. **/
+    public static Span span(String name) {
+        return ENABLED || RECORDING ? new Span(name, RECORDING) : NOOP;
+    }
+
+    /** Return what work returns, timed as a span of the given name. **/
+    public static <T> T time(String name, Supplier<T> work) {
+        Span s = span(name);
+        try {
+            return work.get();
+        } finally {
+            s.close();
+        }
+    }
+
+    /** Run work, timed as a span of the given name. **/
+    public static void time(String name, Runnable work) {
+        Span s = span(name);
+        try {
+            work.run();
+        } finally {
+            s.close();
+        }
+    }
+
+    /** Add n to the named counter. **/
+    public static void count(String name, long n) {
+        if (ENABLED) {
+            COUNTERS.computeIfAbsent(name, k -> new LongAdder()).add(n);
+        }
+    }
+
+    /** Return the summary of everything recorded so far as a JSON object. **/
+    static String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"command\":").append(quote(command));
+        sb.append(",\"total_ms\":").append(millis(System.nanoTime() - START));
+        sb.append(",\"spans\":{");
+        String sep = "";
+        for (Map.Entry<String, Stat> e : new TreeMap<>(SPANS).entrySet()) {
+            sb.append(sep).append(quote(e.getKey()))
+              .append(":{\"count\":").append(e.getValue().count.sum())
+              .append(",\"ms\":").append(millis(e.getValue().nanos.sum())).append('}');
+            sep = ",";
+        }
+        sb.append("},\"counters\":{");
+        sep = "";
+        for (Map.Entry<String, LongAdder> e : new TreeMap<>(COUNTERS).entrySet()) {
+            sb.append(sep).append(quote(e.getKey())).append(':').append(e.getValue().sum());
+            sep = ",";
+        }
+        return sb.append("}}").toString();
+    }
+
+    /** Write the summary where GITLET_TRACE asks for it. **/
+    private static void report() {
+        String json = toJson();
+        if (TARGET.equals("1")) {
+            System.err.println(json);
+            return;
+        }
+        try (PrintStream out = new PrintStream(new FileOutputStream(TARGET, true), true,
+                StandardCharsets.UTF_8.name())) {
+            out.println(json);
+        } catch (IOException e) {
+            System.err.println(json);
+        }
+    }
+
+    /** Return nanos as milliseconds with three decimals. **/
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / 1e6);
+    }
+
+    /** Return s as a JSON string. **/
+    private static String quote(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    /** Number of runs and total time of the spans of one name **/
+    private static class Stat {
+        final LongAdder count = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+    }
+
+    /** One timed piece of work. **/
+    public static class Span implements AutoCloseable {
+        private final String name;
+        private final long start;
+        /** Flight Recorder event of this span, or null if no recording runs **/
+        private final SpanEvent event;
+
+        private Span(String name, boolean recording) {
+            this.name = name;
+            this.start = ENABLED ? System.nanoTime() : 0;
+            this.event = recording ? new SpanEvent() : null;
+            if (event != null) {
+                event.name = name;
+                event.begin();
+            }
+        }
+
+        /** Record that this span moved n bytes. **/
+        public void bytes(long n) {
+            if (event != null) {
+                event.bytes += n;
+            }
+            if (name != null) {
+                count(name + ".bytes", n);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (event != null) {
+                event.commit();
+            }
+            if (ENABLED && name != null) {
+                Stat s = SPANS.computeIfAbsent(name, k -> new Stat());
+                s.count.increment();
+                s.nanos.add(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /** Flight Recorder event of a span **/
+    @Name("gitlet.Span")
+    @Label("Gitlet Span")
+    @Category("Gitlet")
+    @Description("A timed piece of work of a gitlet command")
+    static class SpanEvent extends Event {
+        @Label("Name")
+        String name;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+}
@@ -1,30 +1,132 @@
 package gitlet;
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Objects;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.function.BiConsumer;
 
+/** The files of a commit, or of the staging area, with their blob ids.
+ *  A tree read from disk is backed by a read-only gitlet.PackedTree, which get,
+ *  contains, paths and the other read methods use directly. The first call to
+ *  getMap or getRemoveSet copies it into a mutable map and set, so only trees
+ *  that are changed pay for them. Trees are always written packed; trees
+ *  written before, with the map and set as fields, still read back.
+ **/
 public class Tree implements Serializable {
+    /** Id of the class when trees were stored with their fields, kept so those still read **/
+    private static final long serialVersionUID = 6111321692163622194L;
+
     /** Map contains all the files that are staged or tracked**/
     private TreeMap<String, String> map;
     /** Set contains all the files that need to untracked or removed **/
     private Set<String> removeSet;
+    /** Packed contents until the map and set are needed, null after **/
+    private transient volatile gitlet.PackedTree packed;
+
     /** Create a tree object. **/
     Tree() {
         map = new TreeMap<>();
         removeSet = new TreeSet<>();
     }
+    /** Create a tree backed by packed contents. **/
+    Tree(gitlet.PackedTree packed) {
+        this.packed = packed;
+    }
     /** Get the created Tree object. **/
     public static Tree createTree() {
         return new Tree();
     }
     /** Get the Map of the given Tree Object. **/
     public TreeMap<String, String> getMap() {
+        unpack();
         return this.map;
     }
     /** Get the Remove Set of the given Tree Object. **/
     public Set<String> getRemoveSet() {
+        unpack();
         return this.removeSet;
     }
 
+    /** Get the blob id of the file, or null if it is not in the tree. **/
+    public String get(String file) {
+        gitlet.PackedTree p = packed;
+        return p != null ? p.get(file) : map.get(file);
+    }
+    /** Check if the file is in the tree. **/
+    public boolean contains(String file) {
+        gitlet.PackedTree p = packed;
+        return p != null ? p.find(file) >= 0 : map.containsKey(file);
+    }
+    /** Check if the file is staged for removal. **/
+    public boolean isRemoved(String file) {
+        gitlet.PackedTree p = packed;
+        return p != null ? p.isRemoved(file) : removeSet.contains(file);
+    }
+    /** Get the number of files in the tree. **/
+    public int size() {
+        gitlet.PackedTree p = packed;
+        return p != null ? p.size() : map.size();
+    }
+    /** Get the files of the tree, read-only. **/
+    public Collection<String> paths() {
+        gitlet.PackedTree p = packed;
+        return p != null ? p.paths() : Collections.unmodifiableSet(map.keySet());
+    }
+    /** Get the blob ids of the files of the tree, read-only. **/
+    public Collection<String> ids() {
+        gitlet.PackedTree p = packed;
+        return p != null ? p.ids() : Collections.unmodifiableCollection(map.values());
+    }
+    /** Call action with every file of the tree and its blob id, in order. A packed
+     * tree is walked by position, without looking any file up. **/
+    public void forEach(BiConsumer<String, String> action) {
+        gitlet.PackedTree p = packed;
+        if (p == null) {
+            map.forEach(action);
+            return;
+        }
+        for (int i = 0; i < p.size(); i++) {
+            action.accept(p.path(i), p.id(i));
+        }
+    }
+    /** Get the files staged for removal, read-only. **/
+    public Collection<String> removed() {
+        gitlet.PackedTree p = packed;
+        return p != null ? p.removed() : Collections.unmodifiableSet(removeSet);
+    }
+
+    /** Get the files whose blob ids differ between t1 and t2, in order. **/
+    public static Set<String> changedPaths(Tree t1, Tree t2) {
+        Set<String> changed = new TreeSet<>();
+        for (String file : t1.paths()) {
+            if (!Objects.equals(t1.get(file), t2.get(file))) {
+                changed.add(file);
+            }
+        }
+        for (String file : t2.paths()) {
+            if (!t1.contains(file)) {
+                changed.add(file);
+            }
+        }
+        return changed;
+    }
+
+    /** Copy the packed contents into the mutable map and set. **/
+    private synchronized void unpack() {
+        gitlet.PackedTree p = packed;
+        if (p != null) {
+            map = p.toMap();
+            removeSet = new TreeSet<>(p.removed());
+            packed = null;
+        }
+    }
+
+    /** Write the tree in packed form, as is if it was never unpacked. **/
+    private Object writeReplace() {
+        gitlet.PackedTree p = packed;
+        return p != null ? p : gitlet.PackedTree.of(map, removeSet);
+    }
 }
@@ -1,21 +1,23 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -33,27 +35,36 @@ class Utils {
 
     /* SHA-1 HASH VALUES. */
 
+    /** A SHA-1 digest for each thread, as getting one from its provider
+     *  costs more than hashing a small object. */
+    private static final ThreadLocal<MessageDigest> SHA1 =
+        ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException excp) {
+                throw new IllegalArgumentException("System does not support SHA-1");
+            }
+        });
+
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
+        try (gitlet.Trace.Span span = gitlet.Trace.span("sha1")) {
+            MessageDigest md = SHA1.get();
+            md.reset();
             for (Object val : vals) {
+                byte[] bytes;
                 if (val instanceof byte[]) {
-                    md.update((byte[]) val);
+                    bytes = (byte[]) val;
                 } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+                    bytes = ((String) val).getBytes(StandardCharsets.UTF_8);
                 } else {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
+                md.update(bytes);
+                span.bytes(bytes.length);
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
-        } catch (NoSuchAlgorithmException excp) {
-            throw new IllegalArgumentException("System does not support SHA-1");
+            return gitlet.ObjectId.toHex(md.digest());
         }
     }
 
@@ -97,8 +108,10 @@ class Utils {
         if (!file.isFile()) {
             throw new IllegalArgumentException("must be a normal file");
         }
-        try {
-            return Files.readAllBytes(file.toPath());
+        try (gitlet.Trace.Span span = gitlet.Trace.span("readContents")) {
+            byte[] contents = Files.readAllBytes(file.toPath());
+            span.bytes(contents.length);
+            return contents;
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -116,7 +129,7 @@ class Utils {
      *  either a String or a byte array.  Throws IllegalArgumentException
      *  in case of problems. */
     static void writeContents(File file, Object... contents) {
-        try {
+        try (gitlet.Trace.Span span = gitlet.Trace.span("writeContents")) {
             if (file.isDirectory()) {
                 throw
                     new IllegalArgumentException("cannot overwrite directory");
@@ -124,11 +137,10 @@ class Utils {
             BufferedOutputStream str =
                 new BufferedOutputStream(Files.newOutputStream(file.toPath()));
             for (Object obj : contents) {
-                if (obj instanceof byte[]) {
-                    str.write((byte[]) obj);
-                } else {
-                    str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
-                }
+                byte[] bytes = obj instanceof byte[] ? (byte[]) obj
+                        : ((String) obj).getBytes(StandardCharsets.UTF_8);
+                str.write(bytes);
+                span.bytes(bytes.length);
             }
             str.close();
         } catch (IOException | ClassCastException excp) {
@@ -136,22 +148,89 @@ class Utils {
         }
     }
 
+    /** Objects at least this large are memory-mapped rather than read. */
+    private static final long MAP_THRESHOLD = 1 << 20;
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
+     *  The file is read with one call, or memory-mapped if it is large, and
+     *  decoded from memory rather than through many small reads of the file.
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
+        try (gitlet.Trace.Span span = gitlet.Trace.span("readObject");
+             FileChannel ch = FileChannel.open(file.toPath())) {
+            long size = ch.size();
+            span.bytes(size);
+            InputStream stream;
+            if (size >= MAP_THRESHOLD) {
+                stream = new BufferInputStream(
+                    ch.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            } else {
+                ByteBuffer buf = ByteBuffer.allocate((int) size);
+                while (buf.hasRemaining() && ch.read(buf) >= 0) {
+                    continue;
+                }
+                stream = new ByteArrayInputStream(buf.array(), 0, buf.position());
+            }
+            return readObject(stream, expectedClass);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return an object of type T decoded from CONTENTS, the bytes of a file
+     *  already in memory, casting it to EXPECTEDCLASS.
+     *  Throws IllegalArgumentException in case of problems. */
+    static <T extends Serializable> T readObject(byte[] contents,
+                                                 Class<T> expectedClass) {
+        return readObject(new ByteArrayInputStream(contents), expectedClass);
+    }
+
+    /** Return an object of type T decoded from STREAM, casting it to EXPECTEDCLASS. */
+    private static <T extends Serializable> T readObject(InputStream stream,
+                                                         Class<T> expectedClass) {
         try {
-            ObjectInputStream in =
-                new ObjectInputStream(new FileInputStream(file));
-            T result = expectedClass.cast(in.readObject());
-            in.close();
-            return result;
+            ObjectInputStream in = new ObjectInputStream(stream);
+            return expectedClass.cast(in.readObject());
         } catch (IOException | ClassCastException
                  | ClassNotFoundException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
     }
 
+    /** An InputStream over the remaining bytes of a ByteBuffer. */
+    private static class BufferInputStream extends InputStream {
+        /** The bytes to read. */
+        private final ByteBuffer buf;
+
+        BufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buf.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buf.remaining();
+        }
+    }
+
     /** Write OBJ to FILE. */
     static void writeObject(File file, Serializable obj) {
         writeContents(file, serialize(obj));
@@ -172,10 +251,11 @@ class Utils {
      *  lexicographic order as Java Strings.  Returns null if DIR does
      *  not denote a directory. */
     static List<String> plainFilenamesIn(File dir) {
-        String[] files = dir.list(PLAIN_FILES);
+        String[] files = gitlet.Trace.time("plainFilenamesIn", () -> dir.list(PLAIN_FILES));
         if (files == null) {
             return null;
         } else {
+            gitlet.Trace.count("plainFilenamesIn.files", files.length);
             Arrays.sort(files);
             return Arrays.asList(files);
         }
@@ -0,0 +1,106 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import gitlet.GitletException;
+import gitlet.Repository;
+
+/** Checks of Repository handles that the command-line tests cannot make: two
+ *  repositories open at once in one process, queried from many threads. The
+ *  repositories are made by running gitlet.Main in them.
+ *  @author Vivek Singh
+ */
+public class HandleTest {
+    /** Queries every thread makes on each handle **/
+    private static final int ROUNDS = 200;
+
+    public static void main(String[] args) throws Exception {
+        File a = Files.createTempDirectory("gitlet-handle-a").toFile();
+        File b = Files.createTempDirectory("gitlet-handle-b").toFile();
+        gitlet(a, "init");
+        Files.writeString(new File(a, "wug.txt").toPath(), "This is a wug.\n");
+        gitlet(a, "add", "wug.txt");
+        gitlet(a, "commit", "a is a wug");
+        gitlet(b, "init");
+        gitlet(b, "branch", "other");
+        Files.writeString(new File(b, "notwug.txt").toPath(), "This is not a wug.\n");
+        gitlet(b, "add", "notwug.txt");
+        gitlet(b, "commit", "b is not a wug");
+
+        Repository ra = Repository.open(a);
+        Repository rb = Repository.open(b);
+        check(ra.branches().equals(List.of("master")), "branches of a");
+        check(rb.branches().equals(List.of("master", "other")), "branches of b");
+
+        String tipA = ra.branchTip("master");
+        String tipB = rb.branchTip("master");
+        check(ra.resolve(tipA.substring(0, 8)).equals(tipA), "abbreviated id in a");
+        check(ra.log(tipA, 10).size() == 2, "log of a");
+        check(ra.findByMessage("a is a wug").equals(List.of(tipA)), "find in a");
+        check(rb.findByMessage("a is a wug").isEmpty(), "find of a's message in b");
+        check(rb.findByMessage("b is not a wug").equals(List.of(tipB)), "find in b");
+        Map<String, String> files = ra.files(tipA);
+        check(new String(ra.blob(files.get("wug.txt"))).equals("This is a wug.\n"), "blob in a");
+        check(!rb.files(tipB).containsKey("wug.txt"), "files of b");
+        try {
+            rb.resolve(tipA);
+            check(false, "a's commit resolved in b");
+        } catch (GitletException e) {
+            check(e.getMessage().equals("No commit with that id exists."), "error of resolve");
+        }
+        try {
+            Repository.open(Files.createTempDirectory("gitlet-handle-none").toFile());
+            check(false, "open without a repository");
+        } catch (GitletException e) {
+            check(e.getMessage().equals("Not in an initialized Gitlet directory."), "error of open");
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < ROUNDS; i++) {
+                    check(ra.commit(tipA).getMsg().equals("a is a wug"), "concurrent commit in a");
+                    check(rb.commit(tipB).getMsg().equals("b is not a wug"), "concurrent commit in b");
+                    check(ra.files(tipA).keySet().equals(files.keySet()), "concurrent files in a");
+                    check(rb.findByMessage("initial commit").size() == 1, "concurrent find in b");
+                }
+            }));
+        }
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        pool.shutdown();
+        System.out.println("HandleTest: passed");
+    }
+
+    /** Run gitlet.Main with the given arguments in dir and fail if it does not exit normally. **/
+    static void gitlet(File dir, String... args) throws IOException, InterruptedException {
+        List<String> cmd = new ArrayList<>(List.of("java", "-cp", classPath(), "gitlet.Main"));
+        cmd.addAll(List.of(args));
+        Process p = new ProcessBuilder(cmd).directory(dir).inheritIO().start();
+        check(p.waitFor() == 0, "gitlet " + String.join(" ", args));
+    }
+
+    /** Return the class path of this process with every entry made absolute. **/
+    static String classPath() {
+        List<String> entries = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            entries.add(new File(entry).getAbsolutePath());
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+
+    /** Fail with msg unless ok holds. **/
+    static void check(boolean ok, String msg) {
+        if (!ok) {
+            throw new AssertionError("HandleTest: " + msg);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import gitlet.Repository;
+
+/** Checks of fetch and pull over HTTP, which the command-line tests cannot make
+ *  since they need a server running beside the client. gitlet serve is started
+ *  on a free port, and a second repository fetches from it twice: once from
+ *  scratch and once with the commits it already has.
+ *  @author Vivek Singh
+ */
+public class ServeTest {
+    /** First line gitlet serve prints, with the port it listens on **/
+    private static final Pattern SERVING =
+            Pattern.compile("Serving 1 repositories on http://localhost:(\\d+)/");
+
+    public static void main(String[] args) throws Exception {
+        File root = Files.createTempDirectory("gitlet-serve").toFile();
+        File server = new File(root, "D1");
+        File client = Files.createTempDirectory("gitlet-serve-client").toFile();
+        server.mkdir();
+        HandleTest.gitlet(server, "init");
+        Files.writeString(new File(server, "wug.txt").toPath(), "This is a wug.\n");
+        HandleTest.gitlet(server, "add", "wug.txt");
+        HandleTest.gitlet(server, "commit", "added wug");
+
+        Process serve = new ProcessBuilder("java", "-cp", HandleTest.classPath(), "gitlet.Main",
+                "serve", root.getPath(), "0").redirectErrorStream(true).start();
+        try {
+            BufferedReader out = new BufferedReader(
+                    new InputStreamReader(serve.getInputStream(), StandardCharsets.UTF_8));
+            String line = out.readLine();
+            Matcher m = SERVING.matcher(line == null ? "" : line);
+            check(m.matches(), "serve printed " + line);
+            String url = "http://localhost:" + m.group(1) + "/D1";
+
+            HandleTest.gitlet(client, "init");
+            HandleTest.gitlet(client, "add-remote", "R1", url);
+            HandleTest.gitlet(client, "fetch", "R1", "master");
+            Repository rs = Repository.open(server);
+            Repository rc = Repository.open(client);
+            String tip = rs.branchTip("master");
+            check(rc.branchTip("R1/master").equals(tip), "fetched branch");
+            check(rc.log(tip, 10).size() == 2, "fetched history");
+            check(new String(rc.blob(rc.files(tip).get("wug.txt"))).equals("This is a wug.\n"),
+                    "fetched blob");
+
+            HandleTest.gitlet(client, "reset", tip);
+            Files.writeString(new File(server, "notwug.txt").toPath(), "This is not a wug.\n");
+            HandleTest.gitlet(server, "add", "notwug.txt");
+            HandleTest.gitlet(server, "commit", "added notwug");
+            HandleTest.gitlet(client, "pull", "R1", "master");
+            String tip2 = rs.branchTip("master");
+            check(rc.currentBranch().equals("master"), "branch after pull");
+            check(rc.branchTip("master").equals(tip2), "pulled branch");
+            check(rc.branchTip("R1/master").equals(tip2), "fetched branch after pull");
+            check(rc.log(tip2, 10).size() == 3, "pulled history");
+            check(Files.readString(new File(client, "notwug.txt").toPath())
+                    .equals("This is not a wug.\n"), "pulled file");
+            check(rc.findByMessage("added notwug").equals(List.of(tip2)), "pulled commit indexed");
+        } finally {
+            serve.destroy();
+            serve.waitFor();
+        }
+        System.out.println("ServeTest: passed");
+    }
+
+    /** Fail with msg unless ok holds. **/
+    static void check(boolean ok, String msg) {
+        if (!ok) {
+            throw new AssertionError("ServeTest: " + msg);
+        }
+    }
+}